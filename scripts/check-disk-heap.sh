@@ -0,0 +1,49 @@
+#!/bin/sh
+#
+# Checks that the disk profile keeps heap use flat as FIELDS grows past the
+# heap size, using the single-shot mode and Java 8 GC logs.
+#
+#   scripts/check-disk-heap.sh [records] [heapMb]    (default 2000000, 64)
+#
+# A generated file is ingested into a fresh disk store and then exported,
+# each in a JVM with the given maximum heap. For each phase the heap in use
+# after GC is reported for the first and last quarter of the collections
+# alongside the size of the store: if the store is several times the heap
+# and the two figures are close, heap use did not grow with the table.
+
+set -e
+
+RECORDS=${1:-2000000}
+HEAP=${2:-64}
+cd "$(dirname "$0")/.."
+JAR=target/file-spring-batch-0.0.1.jar
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+
+[ -f "$JAR" ] || ./mvnw -q -DskipTests package
+
+awk -v n="$RECORDS" 'BEGIN { for (i = 0; i < n; i++) printf "Row %d - fieldC1,fieldC2 %d,fieldC3 %d\n", i, i, i }' > "$WORK/input.csv"
+
+# Max heap after GC (KB) in the first and last quarter of the collections
+after_gc() {
+	sed -n 's/.*[^0-9][0-9][0-9]*K->\([0-9][0-9]*\)K(.*/\1/p' "$1" |
+		awk '{ after[NR] = $1 } END {
+			q = int(NR / 4); if (q == 0) q = 1
+			for (i = 1; i <= q; i++) if (after[i] > first) first = after[i]
+			for (i = NR - q + 1; i <= NR; i++) if (after[i] > last) last = after[i]
+			printf "%d collections, heap after GC max %dKB in the first quarter, %dKB in the last", NR, first, last
+		}'
+}
+
+run() {
+	job=$1
+	file=$2
+	java -Xmx${HEAP}m -XX:+UseParallelGC -XX:+PrintGC -Xloggc:"$WORK/gc-$job.log" -jar "$JAR" \
+		--run.job="$job" --run.file="$file" --spring.profiles.active=dev,disk \
+		--input.storage.path="$WORK/db/bootbatch" --logging.level.uk.gov.hmrc=INFO \
+		--logging.file="$WORK/batch.log" > /dev/null
+	echo "$job: $(after_gc "$WORK/gc-$job.log"), store $(du -sk "$WORK/db" | cut -f1)KB, heap ${HEAP}MB"
+}
+
+run csvFileToDatabaseJob "file://$WORK/input.csv"
+run databaseToFileJob "file://$WORK/outputFile"
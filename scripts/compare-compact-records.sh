@@ -0,0 +1,53 @@
+#!/bin/sh
+#
+# Compares heap allocation per ingested record with and without
+# input.compactRecords, using the single-shot ingest mode and Java 8 GC logs.
+#
+#   scripts/compare-compact-records.sh [records]    (default 1000000)
+#
+# Each mode is run against a generated file of the given size and against a
+# one-record file; the difference in bytes allocated (summed from the GC log)
+# divided by the record count is the allocation per record. A small young
+# generation keeps the part allocated after the last GC, which the log does
+# not show, to a few bytes per record. Application logging is held at INFO so
+# that the per-record debug lines do not count towards either mode.
+
+set -e
+
+RECORDS=${1:-1000000}
+cd "$(dirname "$0")/.."
+JAR=target/file-spring-batch-0.0.1.jar
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+
+[ -f "$JAR" ] || ./mvnw -q -DskipTests package
+
+generate() {
+	awk -v n="$1" 'BEGIN { for (i = 0; i < n; i++) printf "Row %d - fieldC1,fieldC2 %d,fieldC3 %d\n", i, i, i }' > "$2"
+}
+
+# Bytes allocated according to the GC log: heap before each GC less heap after the previous one
+allocated() {
+	sed -n 's/.*[^0-9]\([0-9][0-9]*\)K->\([0-9][0-9]*\)K(.*/\1 \2/p' "$1" |
+		awk '{ total += $1 - after; after = $2 } END { printf "%.0f", total * 1024 }'
+}
+
+run() {
+	mode=$1
+	input=$2
+	log=$WORK/gc-$mode-$(basename "$input").log
+	java -Xmx512m -Xmn16m -XX:+UseParallelGC -XX:+PrintGC -Xloggc:"$log" -jar "$JAR" \
+		--run.job=csvFileToDatabaseJob --run.file="file://$input" --input.compactRecords="$mode" \
+		--spring.profiles.active=dev,disk --input.storage.path="$WORK/db-$mode-$(basename "$input")/bootbatch" \
+		--logging.file="$WORK/batch.log" --logging.level.uk.gov.hmrc=INFO > /dev/null
+	allocated "$log"
+}
+
+generate "$RECORDS" "$WORK/full.csv"
+generate 1 "$WORK/one.csv"
+
+for mode in false true; do
+	full=$(run $mode "$WORK/full.csv")
+	base=$(run $mode "$WORK/one.csv")
+	echo "compactRecords=$mode: $(( (full - base) / RECORDS )) bytes allocated per record ($RECORDS records)"
+done
@@ -0,0 +1,69 @@
+#!/bin/sh
+#
+# Compares startup of the scheduled application with the single-shot mode,
+# using the "Startup:" lines both modes log.
+#
+#   scripts/compare-launch-modes.sh [runs]    (default 5)
+#
+# For each run the scheduled application is started until its context is
+# ready and then stopped, and the single-shot ingest is run to completion
+# against a small generated file on a fresh disk store. Averages of the
+# context ready time and, for the single-shot mode, the time to first record
+# and the wall time of the whole run are printed.
+
+set -e
+
+RUNS=${1:-5}
+cd "$(dirname "$0")/.."
+JAR=target/file-spring-batch-0.0.1.jar
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+
+[ -f "$JAR" ] || ./mvnw -q -DskipTests package
+
+mkdir -p "$WORK/files/process" "$WORK/files/error" "$WORK/files/output" "$WORK/files/archive"
+awk 'BEGIN { for (i = 0; i < 1000; i++) printf "Row %d - fieldC1,fieldC2 %d,fieldC3 %d\n", i, i, i }' > "$WORK/input.csv"
+
+# Milliseconds from the first "Startup: <what>" line of a log
+startup() {
+	sed -n "s/.*Startup: $2 \([0-9][0-9]*\)ms.*/\1/p" "$1" | head -1
+}
+
+now() {
+	date +%s%N | cut -c1-13
+}
+
+COMMON="--logging.level.uk.gov.hmrc=INFO --input.inputFile=file://$WORK/files/inputFile.csv
+	--input.processedFile=file://$WORK/files/process/inputFile.csv --input.errorDir=file://$WORK/files/error/
+	--input.errorFile=file://$WORK/files/error/inputFile.csv_error_ --input.outputFile=file://$WORK/files/output/outputFile
+	--input.ingestIndexFile=file://$WORK/files/process/ingested.idx --input.archiveDir=file://$WORK/files/archive/"
+
+scheduled_total=0
+single_total=0
+first_total=0
+wall_total=0
+
+for run in $(seq "$RUNS"); do
+	log=$WORK/scheduled-$run.log
+	java -jar "$JAR" $COMMON --logging.file="$log" > /dev/null 2>&1 &
+	pid=$!
+	while [ -z "$(startup "$log" "context ready" 2> /dev/null)" ]; do
+		kill -0 $pid 2> /dev/null || { echo "Scheduled application exited early, see $log" >&2; exit 1; }
+		sleep 0.2
+	done
+	kill $pid
+	wait $pid 2> /dev/null || true
+	scheduled_total=$((scheduled_total + $(startup "$log" "context ready")))
+
+	log=$WORK/single-$run.log
+	start=$(now)
+	java -jar "$JAR" --run.job=csvFileToDatabaseJob --run.file="file://$WORK/input.csv" \
+		--spring.profiles.active=dev,disk --input.storage.path="$WORK/db-$run/bootbatch" \
+		$COMMON --logging.file="$log" > /dev/null
+	wall_total=$((wall_total + $(now) - start))
+	single_total=$((single_total + $(startup "$log" "context ready")))
+	first_total=$((first_total + $(startup "$log" "first record read")))
+done
+
+echo "scheduled:   context ready $((scheduled_total / RUNS))ms ($RUNS runs)"
+echo "single-shot: context ready $((single_total / RUNS))ms, first record $((first_total / RUNS))ms, whole run $((wall_total / RUNS))ms ($RUNS runs)"
@@ -0,0 +1,152 @@
+package uk.gov.hmrc.regen;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.jpa.JpaRepositoriesAutoConfiguration;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.event.ApplicationEnvironmentPreparedEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Import;
+
+import uk.gov.hmrc.regen.common.ApplicationConfiguration;
+import uk.gov.hmrc.regen.common.DiskSchemaInitializer;
+import uk.gov.hmrc.regen.common.JobRepositoryRecovery;
+import uk.gov.hmrc.regen.common.StartupTimingListener;
+import uk.gov.hmrc.regen.in.CsvFileToDatabaseConfig;
+import uk.gov.hmrc.regen.out.DatabaseToFileConfig;
+
+/**
+ * Single-shot launch mode: runs one named job against a given file and exits.
+ * Only the package of the requested job is scanned, so neither the other job
+ * nor the Quartz scheduler is created, and JPA/Hibernate auto-configuration is
+ * excluded.
+ * <p>
+ * A run needs persistent storage (e.g. the {@code disk} profile), since rows
+ * loaded into or exported from the default in-memory database would be lost
+ * or absent; without it the launch fails before any bean is created.
+ * <p>
+ * Deliberately not annotated as a component so that the scheduled
+ * application's component scan does not pick it up.
+ */
+@EnableAutoConfiguration(exclude = { HibernateJpaAutoConfiguration.class, JpaRepositoriesAutoConfiguration.class })
+@Import({ ApplicationConfiguration.class, StartupTimingListener.class, JobRepositoryRecovery.class,
+		DiskSchemaInitializer.class })
+public class SingleJobApplication {
+
+	private static final Logger log = LoggerFactory.getLogger(SingleJobApplication.class);
+
+	public static final String JOB_ARG = "--run.job=";
+
+	public static final String FILE_ARG = "--run.file=";
+
+	public static final String MEASURE_ARG = "--run.measureStartup";
+
+	@ComponentScan(basePackageClasses = CsvFileToDatabaseConfig.class)
+	public static class IngestJob {
+	}
+
+	@ComponentScan(basePackageClasses = DatabaseToFileConfig.class)
+	public static class ExportJob {
+	}
+
+	/**
+	 * Rejects a launch against the embedded in-memory database as soon as the
+	 * environment is known.
+	 */
+	private static class PersistentStorageCheck implements ApplicationListener<ApplicationEnvironmentPreparedEvent> {
+
+		private final String jobName;
+
+		private PersistentStorageCheck(final String jobName) {
+			this.jobName = jobName;
+		}
+
+		@Override
+		public void onApplicationEvent(ApplicationEnvironmentPreparedEvent event) {
+			String url = event.getEnvironment().getProperty("spring.datasource.url");
+			if (url == null || url.contains(":mem:")) {
+				throw new IllegalStateException("Single-shot " + jobName
+						+ " needs persistent storage, its data would be lost with the in-memory database: "
+						+ "activate the disk profile (e.g. --spring.profiles.active=dev,disk)");
+			}
+		}
+	}
+
+	public static boolean isRequested(final String[] args) {
+		for (String arg : args) {
+			if (arg.startsWith(JOB_ARG)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public static void main(String[] args) throws Exception {
+		String jobName = null;
+		String file = null;
+		boolean measureStartup = false;
+		List<String> bootArgs = new ArrayList<>();
+
+		for (String arg : args) {
+			if (arg.startsWith(JOB_ARG)) {
+				jobName = arg.substring(JOB_ARG.length());
+			} else if (arg.startsWith(FILE_ARG)) {
+				file = arg.substring(FILE_ARG.length());
+			} else if (arg.equals(MEASURE_ARG)) {
+				measureStartup = true;
+			} else {
+				bootArgs.add(arg);
+			}
+		}
+
+		Class<?> jobSource;
+		String fileProperty;
+		if ("csvFileToDatabaseJob".equals(jobName)) {
+			jobSource = IngestJob.class;
+			fileProperty = "input.processedFile";
+		} else if ("databaseToFileJob".equals(jobName)) {
+			jobSource = ExportJob.class;
+			fileProperty = "input.outputFile";
+		} else {
+			throw new IllegalArgumentException("Unknown job " + jobName + ", expected csvFileToDatabaseJob or databaseToFileJob");
+		}
+
+		if (file != null) {
+			bootArgs.add("--" + fileProperty + "=" + file);
+		}
+
+		ConfigurableApplicationContext context = new SpringApplicationBuilder(SingleJobApplication.class, jobSource)
+				.web(false).listeners(new PersistentStorageCheck(jobName)).run(bootArgs.toArray(new String[bootArgs.size()]));
+
+		if (measureStartup) {
+			// A full collection so the idle heap figure excludes startup garbage, only paid when benchmarking
+			long ready = ManagementFactory.getRuntimeMXBean().getUptime();
+			System.gc();
+			log.info("Startup: context ready " + ready + "ms after JVM start, idle heap used "
+					+ ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / (1024 * 1024) + "MB");
+		} else {
+			log.info("Startup: context ready " + ManagementFactory.getRuntimeMXBean().getUptime() + "ms after JVM start");
+		}
+
+		JobExecution jobExecution = context.getBean(JobLauncher.class).run(context.getBean(jobName, Job.class),
+				new JobParameters());
+		log.info("{}_{}_{} finished with status {}", jobName, jobExecution.getId(), jobExecution.getExitStatus(),
+				jobExecution.getStatus());
+
+		System.exit(SpringApplication.exit(context, () -> jobExecution.getStatus() == BatchStatus.COMPLETED ? 0 : 1));
+	}
+}
@@ -1,12 +1,23 @@
 package uk.gov.hmrc.regen;
 
+import java.lang.management.ManagementFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
 @SpringBootApplication
 public class SpringBatchCsvApplication {
 
-	public static void main(String[] args) {
+	private static final Logger log = LoggerFactory.getLogger(SpringBatchCsvApplication.class);
+
+	public static void main(String[] args) throws Exception {
+		if (SingleJobApplication.isRequested(args)) {
+			SingleJobApplication.main(args);
+			return;
+		}
 		SpringApplication.run(SpringBatchCsvApplication.class, args);
+		log.info("Startup: context ready " + ManagementFactory.getRuntimeMXBean().getUptime() + "ms after JVM start");
 	}
 }
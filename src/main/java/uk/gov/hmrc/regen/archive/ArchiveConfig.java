@@ -0,0 +1,38 @@
+package uk.gov.hmrc.regen.archive;
+
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.EnableBatchProcessing;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@EnableBatchProcessing
+@Configuration
+public class ArchiveConfig {
+
+	@Autowired
+	private JobBuilderFactory jobBuilderFactory;
+
+	@Autowired
+	private StepBuilderFactory stepBuilderFactory;
+
+	@Autowired
+	private ArchiveTasklet archiveTasklet;
+
+	// begin job info
+	@Bean
+	public Step archiveStep() {
+		return stepBuilderFactory.get("archiveStep").allowStartIfComplete(true).tasklet(archiveTasklet).build();
+	}
+
+	@Bean
+	Job archiveJob() {
+		return jobBuilderFactory.get("archiveJob").incrementer(new RunIdIncrementer()).flow(archiveStep()).end()
+				.build();
+	}
+	// end job info
+}
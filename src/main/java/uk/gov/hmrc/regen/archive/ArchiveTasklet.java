@@ -0,0 +1,193 @@
+package uk.gov.hmrc.regen.archive;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.text.SimpleDateFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import uk.gov.hmrc.regen.common.ApplicationConfiguration;
+
+/**
+ * Moves exported FIELDS rows out of the live table one export run at a time.
+ * A run is only taken once all of its rows are older than the retention
+ * window; it is first written in full to its own gzipped archive file and then
+ * deleted in bounded batches. Each call does one unit of work in its own
+ * transaction, so ingestion is never locked out for long.
+ * <p>
+ * Export run ids are only unique within one job repository (the in-memory one
+ * starts again on every restart), so archive files are named by run id and the
+ * run's first export time, and an existing file is never reused. Rows are only
+ * deleted once the archive has been read back and found to hold every row of
+ * the run; the file, its row count and the highest archived id are then kept
+ * in the step context, committed with the unit of work, and a restarted step
+ * resumes its deletes from that state only, never beyond the archived ids.
+ */
+@Component
+public class ArchiveTasklet implements Tasklet {
+
+	private static final Logger log = LoggerFactory.getLogger(ArchiveTasklet.class);
+
+	private static final String CURRENT_RUN = "archive.currentRun";
+
+	private static final String CURRENT_FILE = "archive.currentFile";
+
+	private static final String ARCHIVED_ROWS = "archive.archivedRows";
+
+	private static final String ARCHIVED_MAX_ID = "archive.archivedMaxId";
+
+	@Autowired
+	ApplicationConfiguration config;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Override
+	public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+		ExecutionContext context = chunkContext.getStepContext().getStepExecution().getExecutionContext();
+
+		if (!context.containsKey(CURRENT_RUN)) {
+			Timestamp cutoff = new Timestamp(System.currentTimeMillis() - config.getARCHIVE_RETENTION_HOURS() * 3600000L);
+			List<Map<String, Object>> runs = jdbcTemplate.queryForList(
+					"SELECT export_run, MIN(exported_at) AS started, COUNT(*) AS row_count, MAX(id) AS max_id FROM fields "
+							+ "WHERE processed = true AND export_run IS NOT NULL GROUP BY export_run "
+							+ "HAVING MAX(exported_at) < ? ORDER BY export_run LIMIT 1", cutoff);
+
+			if (runs.isEmpty()) {
+				log.info("No exported rows older than " + cutoff + " left to archive");
+				return RepeatStatus.FINISHED;
+			}
+
+			Map<String, Object> run = runs.get(0);
+			long exportRun = ((Number) run.get("export_run")).longValue();
+			long rows = ((Number) run.get("row_count")).longValue();
+			long maxId = ((Number) run.get("max_id")).longValue();
+
+			Path archive = archive(exportRun, (Timestamp) run.get("started"), rows, maxId);
+			context.putLong(CURRENT_RUN, exportRun);
+			context.putString(CURRENT_FILE, archive.toString());
+			context.putLong(ARCHIVED_ROWS, rows);
+			context.putLong(ARCHIVED_MAX_ID, maxId);
+			return RepeatStatus.CONTINUABLE;
+		}
+
+		long run = context.getLong(CURRENT_RUN);
+		Path archive = Paths.get(context.getString(CURRENT_FILE));
+		long maxId = context.getLong(ARCHIVED_MAX_ID);
+
+		if (!Files.exists(archive)) {
+			throw new IllegalStateException("Archive " + archive + " of export run " + run
+					+ " is missing...not deleting its rows");
+		}
+
+		List<Long> ids = jdbcTemplate.queryForList(
+				"SELECT id FROM fields WHERE export_run = ? AND id <= ? ORDER BY id LIMIT ?", Long.class, run, maxId,
+				config.getARCHIVE_BATCH_SIZE());
+
+		if (ids.isEmpty()) {
+			log.info("Purged export run " + run + " (" + context.getLong(ARCHIVED_ROWS) + " rows archived to " + archive
+					+ ") from the database");
+			context.remove(CURRENT_RUN);
+			context.remove(CURRENT_FILE);
+			context.remove(ARCHIVED_ROWS);
+			context.remove(ARCHIVED_MAX_ID);
+		} else {
+			int deleted = jdbcTemplate.update("DELETE FROM fields WHERE export_run = ? AND id <= ?", run,
+					ids.get(ids.size() - 1));
+			contribution.incrementWriteCount(deleted);
+		}
+		return RepeatStatus.CONTINUABLE;
+	}
+
+	/**
+	 * Write the run to a new archive file and read it back to check that it holds
+	 * every row of the run before it is used to justify any delete.
+	 */
+	private Path archive(final long run, final Timestamp started, final long rows, final long maxId) throws Exception {
+		Path dir = Paths.get(new URI(config.getARCHIVE_DIR()));
+		String key = "fields_run_" + run + "_" + new SimpleDateFormat("yyyyMMddHHmmssSSS").format(started);
+		Path archive = dir.resolve(key + ".csv.gz");
+		for (int copy = 1; Files.exists(archive); copy++) {
+			// Never trust or overwrite an archive left by an earlier attempt
+			archive = dir.resolve(key + "_" + copy + ".csv.gz");
+		}
+
+		Files.createDirectories(dir);
+		Path tmp = archive.resolveSibling(archive.getFileName() + ".tmp");
+		long[] written = new long[1];
+		try (Writer out = new BufferedWriter(
+				new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(tmp)), StandardCharsets.UTF_8))) {
+			jdbcTemplate.query(
+					"SELECT id, field1, field2, field3, exported_at FROM fields WHERE export_run = ? AND id <= ? ORDER BY id",
+					(RowCallbackHandler) (ResultSet rs) -> {
+						try {
+							out.write(rs.getLong(1) + "," + quote(rs.getString(2)) + "," + quote(rs.getString(3)) + ","
+									+ quote(rs.getString(4)) + "," + rs.getTimestamp(5) + "\n");
+							written[0]++;
+						} catch (IOException e) {
+							throw new IllegalStateException("Unable to write archive " + tmp, e);
+						}
+					}, run, maxId);
+		}
+
+		long readBack = countRecords(tmp);
+		if (written[0] != rows || readBack != rows) {
+			Files.delete(tmp);
+			throw new IllegalStateException("Archive of export run " + run + " holds " + readBack + " rows (" + written[0]
+					+ " written) but the run has " + rows + "...not deleting its rows");
+		}
+
+		Files.move(tmp, archive, StandardCopyOption.ATOMIC_MOVE);
+		log.info("Archived " + rows + " rows of export run " + run + " to " + archive);
+		return archive;
+	}
+
+	private static long countRecords(final Path archive) throws IOException {
+		long count = 0;
+		boolean quoted = false;
+		// Records end at a newline outside quotes, quoted fields may hold newlines of their own
+		try (Reader in = new BufferedReader(
+				new InputStreamReader(new GZIPInputStream(Files.newInputStream(archive)), StandardCharsets.UTF_8))) {
+			int c;
+			while ((c = in.read()) != -1) {
+				if (c == '"') {
+					quoted = !quoted;
+				} else if (c == '\n' && !quoted) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	private static String quote(final String value) {
+		return value == null ? "" : "\"" + value.replace("\"", "\"\"") + "\"";
+	}
+}
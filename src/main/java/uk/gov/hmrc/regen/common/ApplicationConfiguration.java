@@ -26,6 +26,51 @@ public class ApplicationConfiguration {
 	@Value("${input.outputFile}")
 	private String OUTPUT_FILE;
 
+	@Value("${input.outputWriterThreads:2}")
+	private int OUTPUT_WRITER_THREADS;
+
+	@Value("${input.exportPageSize:100}")
+	private int EXPORT_PAGE_SIZE;
+
+	@Value("${input.exportPrefetchDepth:2}")
+	private int EXPORT_PREFETCH_DEPTH;
+
+	@Value("${input.exportSortField:}")
+	private String EXPORT_SORT_FIELD;
+
+	@Value("${input.exportSortRunSize:100000}")
+	private int EXPORT_SORT_RUN_SIZE;
+
+	@Value("${input.compactRecords:false}")
+	private boolean COMPACT_RECORDS;
+
+	@Value("${input.ingestIndexFile}")
+	private String INGEST_INDEX_FILE;
+
+	@Value("${input.ingestIndexSize:1000}")
+	private int INGEST_INDEX_SIZE;
+
+	@Value("${input.archiveDir}")
+	private String ARCHIVE_DIR;
+
+	@Value("${input.archiveRetentionHours:168}")
+	private long ARCHIVE_RETENTION_HOURS;
+
+	@Value("${input.archiveBatchSize:1000}")
+	private int ARCHIVE_BATCH_SIZE;
+
+	@Value("${input.archiveCron:0 15 2 * * ? *}")
+	private String ARCHIVE_CRON;
+
+	@Value("${input.admission.threads:5}")
+	private int ADMISSION_THREADS;
+
+	@Value("${input.admission.connections:4}")
+	private int ADMISSION_CONNECTIONS;
+
+	@Value("${input.admission.chunks:4}")
+	private int ADMISSION_CHUNKS;
+
 	public String getINPUT_FILE() {
 		return this.INPUT_FILE;
 	}
@@ -57,4 +102,64 @@ public class ApplicationConfiguration {
 	public String getOUTPUT_FILE() {
 		return OUTPUT_FILE;
 	}
+
+	public int getOUTPUT_WRITER_THREADS() {
+		return OUTPUT_WRITER_THREADS;
+	}
+
+	public int getEXPORT_PAGE_SIZE() {
+		return EXPORT_PAGE_SIZE;
+	}
+
+	public int getEXPORT_PREFETCH_DEPTH() {
+		return EXPORT_PREFETCH_DEPTH;
+	}
+
+	public String getEXPORT_SORT_FIELD() {
+		return EXPORT_SORT_FIELD;
+	}
+
+	public int getEXPORT_SORT_RUN_SIZE() {
+		return EXPORT_SORT_RUN_SIZE;
+	}
+
+	public boolean isCOMPACT_RECORDS() {
+		return COMPACT_RECORDS;
+	}
+
+	public String getINGEST_INDEX_FILE() {
+		return INGEST_INDEX_FILE;
+	}
+
+	public int getINGEST_INDEX_SIZE() {
+		return INGEST_INDEX_SIZE;
+	}
+
+	public String getARCHIVE_DIR() {
+		return ARCHIVE_DIR;
+	}
+
+	public long getARCHIVE_RETENTION_HOURS() {
+		return ARCHIVE_RETENTION_HOURS;
+	}
+
+	public int getARCHIVE_BATCH_SIZE() {
+		return ARCHIVE_BATCH_SIZE;
+	}
+
+	public String getARCHIVE_CRON() {
+		return ARCHIVE_CRON;
+	}
+
+	public int getADMISSION_THREADS() {
+		return ADMISSION_THREADS;
+	}
+
+	public int getADMISSION_CONNECTIONS() {
+		return ADMISSION_CONNECTIONS;
+	}
+
+	public int getADMISSION_CHUNKS() {
+		return ADMISSION_CHUNKS;
+	}
 }
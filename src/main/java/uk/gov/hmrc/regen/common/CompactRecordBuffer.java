@@ -0,0 +1,84 @@
+package uk.gov.hmrc.regen.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.batch.core.listener.ChunkListenerSupport;
+import org.springframework.batch.core.scope.context.ChunkContext;
+
+/**
+ * Reusable backing store for the {@link CompactSourceRecord}s of a chunk. Field
+ * characters are appended to a single growable array and the record objects
+ * themselves are pooled. Both are recycled after each chunk has been committed
+ * (afterChunk runs outside the chunk transaction), so items cached for a
+ * rolled back chunk remain valid when it is retried.
+ * <p>
+ * Not thread safe - one buffer serves one single-threaded step.
+ */
+public class CompactRecordBuffer extends ChunkListenerSupport {
+
+	private static final int INITIAL_CAPACITY = 4096;
+
+	private char[] chars = new char[INITIAL_CAPACITY];
+
+	private int length = 0;
+
+	private final List<CompactSourceRecord> records = new ArrayList<>();
+
+	private int used = 0;
+
+	private final StringBuilder scratch = new StringBuilder(128);
+
+	public CompactSourceRecord nextRecord() {
+		if (used == records.size()) {
+			records.add(new CompactSourceRecord(this));
+		}
+		CompactSourceRecord record = records.get(used++);
+		record.clear();
+		return record;
+	}
+
+	/**
+	 * Copy the trimmed characters src[from, to) into the buffer as the given field of the record.
+	 */
+	public void copyField(final CompactSourceRecord record, final int index, final CharSequence src, int from, int to) {
+		while (from < to && src.charAt(from) <= ' ') {
+			from++;
+		}
+		while (to > from && src.charAt(to - 1) <= ' ') {
+			to--;
+		}
+
+		int len = to - from;
+		if (length + len > chars.length) {
+			chars = Arrays.copyOf(chars, Math.max(chars.length * 2, length + len));
+		}
+		for (int i = from; i < to; i++) {
+			chars[length++] = src.charAt(i);
+		}
+		record.setBounds(index, length - len, length);
+	}
+
+	char charAt(final int offset) {
+		return chars[offset];
+	}
+
+	String render(final String prefix, final int start, final int len) {
+		if (prefix == null) {
+			return new String(chars, start, len);
+		}
+		scratch.setLength(0);
+		return scratch.append(prefix).append(chars, start, len).toString();
+	}
+
+	public void reset() {
+		length = 0;
+		used = 0;
+	}
+
+	@Override
+	public void afterChunk(ChunkContext context) {
+		reset();
+	}
+}
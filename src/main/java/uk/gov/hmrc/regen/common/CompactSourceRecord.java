@@ -0,0 +1,102 @@
+package uk.gov.hmrc.regen.common;
+
+/**
+ * Flyweight form of {@link SourceContentDTO} used by the compact ingest mode.
+ * The record holds no character data of its own, only the offsets of its
+ * fields within the {@link CompactRecordBuffer} that owns it. Instances are
+ * pooled by the buffer and reused once the chunk that read them has been
+ * committed, so they must not be held on to beyond the chunk.
+ * <p>
+ * Any prefix set by the processor is only applied when the field is rendered
+ * for writing.
+ */
+public class CompactSourceRecord {
+
+	public static final int FIELD_COUNT = 3;
+
+	private final CompactRecordBuffer buffer;
+
+	private final int[] start = new int[FIELD_COUNT];
+
+	private final int[] end = new int[FIELD_COUNT];
+
+	private final FieldView[] views = new FieldView[FIELD_COUNT];
+
+	private String prefix;
+
+	CompactSourceRecord(final CompactRecordBuffer buffer) {
+		this.buffer = buffer;
+		for (int i = 0; i < FIELD_COUNT; i++) {
+			views[i] = new FieldView(i);
+		}
+	}
+
+	void clear() {
+		this.prefix = null;
+	}
+
+	void setBounds(final int index, final int start, final int end) {
+		this.start[index] = start;
+		this.end[index] = end;
+	}
+
+	public int fieldLength(final int index) {
+		return end[index] - start[index];
+	}
+
+	/**
+	 * @return a view onto the raw (unprefixed) field, valid until the owning chunk completes
+	 */
+	public CharSequence field(final int index) {
+		return views[index];
+	}
+
+	public String getPrefix() {
+		return prefix;
+	}
+
+	public void setPrefix(String prefix) {
+		this.prefix = prefix;
+	}
+
+	/**
+	 * @return the field as it should be written, with any prefix applied
+	 */
+	public String render(final int index) {
+		return buffer.render(prefix, start[index], fieldLength(index));
+	}
+
+	@Override
+	public String toString() {
+		return "Field 1:" + views[0] + " Field 2:" + views[1] + " Field 3:" + views[2]
+				+ (prefix != null ? " prefix " + prefix : "");
+	}
+
+	private class FieldView implements CharSequence {
+		private final int index;
+
+		private FieldView(final int index) {
+			this.index = index;
+		}
+
+		@Override
+		public int length() {
+			return fieldLength(index);
+		}
+
+		@Override
+		public char charAt(int offset) {
+			return buffer.charAt(start[index] + offset);
+		}
+
+		@Override
+		public CharSequence subSequence(int from, int to) {
+			return toString().substring(from, to);
+		}
+
+		@Override
+		public String toString() {
+			return buffer.render(null, start[index], length());
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package uk.gov.hmrc.regen.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStream;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamWriter;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.util.Assert;
+
+/**
+ * Composite writer that hands each chunk to all of its delegates at the same
+ * time rather than one after the other, so chunk latency is that of the
+ * slowest delegate rather than the sum of them all.
+ * <p>
+ * Delegates bound to the step transaction (e.g. JDBC writers) must be
+ * registered through {@link #setTransactionalDelegates(List)}; they are run on
+ * the calling thread so that they take part in the chunk commit or rollback.
+ * All other delegates are submitted to the task executor and the write only
+ * returns once every one of them has finished, so the chunk is not committed
+ * until all sinks have their data. A failure in any delegate fails the chunk.
+ * <p>
+ * Pooled delegates run outside the chunk transaction, so output from a chunk
+ * that is rolled back is not undone. They must be restartable from the state
+ * saved in {@link #update(ExecutionContext)} and their output must not be used
+ * until the step completes: a non-transactional FlatFileItemWriter truncates
+ * back to the last committed position when the failed step is restarted, so
+ * its file has to be left in place rather than shipped after a failure.
+ */
+public class ConcurrentCompositeItemWriter<T> implements ItemStreamWriter<T>, InitializingBean {
+
+	private static final Logger log = LoggerFactory.getLogger(ConcurrentCompositeItemWriter.class);
+
+	private List<ItemWriter<? super T>> delegates = new ArrayList<>();
+
+	private List<ItemWriter<? super T>> transactionalDelegates = new ArrayList<>();
+
+	private AsyncTaskExecutor taskExecutor;
+
+	public void setDelegates(List<ItemWriter<? super T>> delegates) {
+		this.delegates = delegates;
+	}
+
+	public void setTransactionalDelegates(List<ItemWriter<? super T>> transactionalDelegates) {
+		this.transactionalDelegates = transactionalDelegates;
+	}
+
+	public void setTaskExecutor(AsyncTaskExecutor taskExecutor) {
+		this.taskExecutor = taskExecutor;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		Assert.notNull(delegates, "The 'delegates' may not be null");
+		Assert.notNull(transactionalDelegates, "The 'transactionalDelegates' may not be null");
+		Assert.isTrue(!delegates.isEmpty() || !transactionalDelegates.isEmpty(), "At least one delegate is required");
+		Assert.isTrue(delegates.isEmpty() || taskExecutor != null, "A task executor is required for pooled delegates");
+	}
+
+	@Override
+	public void write(final List<? extends T> items) throws Exception {
+		List<Future<Void>> pending = new ArrayList<>(delegates.size());
+		for (final ItemWriter<? super T> writer : delegates) {
+			pending.add(taskExecutor.submit(() -> {
+				writer.write(items);
+				return null;
+			}));
+		}
+
+		Exception failure = null;
+		try {
+			for (ItemWriter<? super T> writer : transactionalDelegates) {
+				writer.write(items);
+			}
+		} catch (Exception e) {
+			failure = e;
+		}
+
+		// Always wait for every pooled delegate so none is still writing when the chunk completes
+		for (Future<Void> future : pending) {
+			try {
+				future.get();
+			} catch (ExecutionException ee) {
+				log.error("Concurrent delegate write failed: " + ee.getCause());
+				if (failure == null) {
+					failure = ee.getCause() instanceof Exception ? (Exception) ee.getCause() : ee;
+				}
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				if (failure == null) {
+					failure = ie;
+				}
+			}
+		}
+
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	@Override
+	public void open(ExecutionContext executionContext) throws ItemStreamException {
+		for (ItemWriter<? super T> writer : allDelegates()) {
+			if (writer instanceof ItemStream) {
+				((ItemStream) writer).open(executionContext);
+			}
+		}
+	}
+
+	@Override
+	public void update(ExecutionContext executionContext) throws ItemStreamException {
+		for (ItemWriter<? super T> writer : allDelegates()) {
+			if (writer instanceof ItemStream) {
+				((ItemStream) writer).update(executionContext);
+			}
+		}
+	}
+
+	@Override
+	public void close() throws ItemStreamException {
+		for (ItemWriter<? super T> writer : allDelegates()) {
+			if (writer instanceof ItemStream) {
+				((ItemStream) writer).close();
+			}
+		}
+	}
+
+	private List<ItemWriter<? super T>> allDelegates() {
+		List<ItemWriter<? super T>> all = new ArrayList<>(delegates.size() + transactionalDelegates.size());
+		all.addAll(delegates);
+		all.addAll(transactionalDelegates);
+		return all;
+	}
+}
@@ -0,0 +1,62 @@
+package uk.gov.hmrc.regen.common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Creates the application tables of a disk-backed store the first time it is
+ * opened. Boot's own schema initialisation is switched off for the disk
+ * profile, as it would run the DDL again on every start; here the script is
+ * only run against an empty store, any error in it fails startup, and a store
+ * holding only some of the tables is refused rather than patched.
+ */
+@Component
+@Profile("disk")
+public class DiskSchemaInitializer {
+
+	private static final Logger log = LoggerFactory.getLogger(DiskSchemaInitializer.class);
+
+	private static final String[] TABLES = { "FIELDS", "INGEST_ARRIVAL", "FRESHNESS" };
+
+	@Autowired
+	private DataSource dataSource;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@PostConstruct
+	public void initialize() {
+		List<String> missing = new ArrayList<>();
+		for (String table : TABLES) {
+			Integer count = jdbcTemplate.queryForObject(
+					"SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA = 'PUBLIC' AND TABLE_NAME = ?",
+					Integer.class, table);
+			if (count == 0) {
+				missing.add(table);
+			}
+		}
+
+		if (missing.isEmpty()) {
+			log.info("Disk store already holds the application tables");
+		} else if (missing.size() == TABLES.length) {
+			ResourceDatabasePopulator populator = new ResourceDatabasePopulator(new ClassPathResource("schema-disk.sql"));
+			DatabasePopulatorUtils.execute(populator, dataSource);
+			log.info("Created the application tables in the new disk store");
+		} else {
+			throw new IllegalStateException("Disk store is missing tables " + missing + " but holds the others...refusing to start");
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package uk.gov.hmrc.regen.common;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedOperationParameter;
+import org.springframework.jmx.export.annotation.ManagedOperationParameters;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * JMX view over the FRESHNESS table: record-weighted latency histograms from
+ * file arrival to the output file, overall and per stage
+ * <ul>
+ * <li>trigger wait - arrival to ingest start</li>
+ * <li>ingest - ingest start to ingest commit</li>
+ * <li>DB dwell - ingest commit to export start</li>
+ * <li>export - export start to output file</li>
+ * </ul>
+ * Batches without a recorded arrival time are left out of the total and
+ * trigger wait histograms and counted separately.
+ * The table itself can equally be queried with SQL.
+ */
+@Component
+@ManagedResource(objectName = "uk.gov.hmrc.regen:name=Freshness", description = "End to end data freshness")
+public class FreshnessMonitor {
+
+	private static final long[] BUCKET_SECONDS = { 60, 120, 300, 600, 1800, 3600, 4 * 3600 };
+
+	private static final String[] STAGES = { "total", "trigger wait", "ingest", "DB dwell", "export" };
+
+	private static final long UNKNOWN = Long.MIN_VALUE;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@ManagedOperation(description = "Latency histograms for records output in the last given number of hours")
+	@ManagedOperationParameters(@ManagedOperationParameter(name = "hours", description = "Reporting window in hours"))
+	public String latencyReport(int hours) {
+		Timestamp since = new Timestamp(System.currentTimeMillis() - hours * 3600000L);
+		long[][] counts = new long[STAGES.length][BUCKET_SECONDS.length + 1];
+		long[] max = new long[STAGES.length];
+
+		List<long[]> batches = jdbcTemplate.query("SELECT records, arrived_at, ingest_started_at, ingest_committed_at, "
+				+ "export_started_at, output_at FROM FRESHNESS WHERE output_at >= ?", (rs, row) -> {
+					Timestamp arrivedAt = rs.getTimestamp(2);
+					long ingestStarted = rs.getTimestamp(3).getTime();
+					long ingestCommitted = rs.getTimestamp(4).getTime();
+					long exportStarted = rs.getTimestamp(5).getTime();
+					long output = rs.getTimestamp(6).getTime();
+					long total = arrivedAt != null ? output - arrivedAt.getTime() : UNKNOWN;
+					long triggerWait = arrivedAt != null ? ingestStarted - arrivedAt.getTime() : UNKNOWN;
+					return new long[] { rs.getLong(1), total, triggerWait, ingestCommitted - ingestStarted,
+							exportStarted - ingestCommitted, output - exportStarted };
+				}, since);
+
+		long records = 0;
+		long noArrival = 0;
+		for (long[] batch : batches) {
+			records += batch[0];
+			if (batch[1] == UNKNOWN) {
+				noArrival += batch[0];
+			}
+			for (int stage = 0; stage < STAGES.length; stage++) {
+				if (batch[stage + 1] == UNKNOWN) {
+					continue;
+				}
+				long seconds = Math.max(0, batch[stage + 1]) / 1000;
+				counts[stage][bucket(seconds)] += batch[0];
+				max[stage] = Math.max(max[stage], seconds);
+			}
+		}
+
+		StringBuilder report = new StringBuilder();
+		report.append(records).append(" records in ").append(batches.size()).append(" batches output since ")
+				.append(since).append("\n");
+		for (int stage = 0; stage < STAGES.length; stage++) {
+			report.append(String.format("%-12s", STAGES[stage]));
+			for (int b = 0; b <= BUCKET_SECONDS.length; b++) {
+				report.append(b < BUCKET_SECONDS.length ? " <" + label(BUCKET_SECONDS[b]) : " >=" + label(BUCKET_SECONDS[b - 1]))
+						.append(":").append(counts[stage][b]);
+			}
+			report.append(" max:").append(label(max[stage])).append("\n");
+		}
+		if (noArrival > 0) {
+			report.append(noArrival).append(" records without an arrival time are not in the total and trigger wait figures\n");
+		}
+		return report.toString();
+	}
+
+	private static int bucket(final long seconds) {
+		for (int b = 0; b < BUCKET_SECONDS.length; b++) {
+			if (seconds < BUCKET_SECONDS[b]) {
+				return b;
+			}
+		}
+		return BUCKET_SECONDS.length;
+	}
+
+	private static String label(final long seconds) {
+		return seconds >= 3600 ? seconds / 3600 + "h" : seconds >= 60 ? seconds / 60 + "m" : seconds + "s";
+	}
+}
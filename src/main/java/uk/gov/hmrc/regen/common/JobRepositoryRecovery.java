@@ -0,0 +1,89 @@
+package uk.gov.hmrc.regen.common;
+
+import java.util.Date;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+/**
+ * Startup recovery for a persistent job repository. Executions still marked as
+ * running were interrupted by the previous process stopping, and would
+ * otherwise block every later launch of the same job instance. They are marked
+ * FAILED so the next launch restarts them from their last committed chunk.
+ * <p>
+ * Runs as a lifecycle bean in an earlier phase than the Quartz scheduler, so it
+ * completes before any trigger can fire.
+ */
+@Component
+public class JobRepositoryRecovery implements SmartLifecycle {
+
+	private static final Logger log = LoggerFactory.getLogger(JobRepositoryRecovery.class);
+
+	@Autowired
+	private JobExplorer jobExplorer;
+
+	@Autowired
+	private JobRepository jobRepository;
+
+	private boolean running = false;
+
+	@Override
+	public void start() {
+		for (String jobName : jobExplorer.getJobNames()) {
+			for (JobExecution jobExecution : jobExplorer.findRunningJobExecutions(jobName)) {
+				Date now = new Date();
+
+				for (StepExecution stepExecution : jobExecution.getStepExecutions()) {
+					if (stepExecution.getStatus().isRunning()) {
+						stepExecution.setStatus(BatchStatus.FAILED);
+						stepExecution.setExitStatus(ExitStatus.FAILED.addExitDescription("Interrupted by shutdown"));
+						stepExecution.setEndTime(now);
+						jobRepository.update(stepExecution);
+					}
+				}
+
+				jobExecution.setStatus(BatchStatus.FAILED);
+				jobExecution.setExitStatus(ExitStatus.FAILED.addExitDescription("Interrupted by shutdown"));
+				jobExecution.setEndTime(now);
+				jobRepository.update(jobExecution);
+				log.info("Recovered interrupted execution " + jobExecution.getId() + " of " + jobName + "...marked for restart");
+			}
+		}
+		running = true;
+	}
+
+	@Override
+	public void stop() {
+		running = false;
+	}
+
+	@Override
+	public boolean isRunning() {
+		return running;
+	}
+
+	@Override
+	public int getPhase() {
+		return 0;
+	}
+
+	@Override
+	public boolean isAutoStartup() {
+		return true;
+	}
+
+	@Override
+	public void stop(Runnable callback) {
+		stop();
+		callback.run();
+	}
+}
@@ -7,6 +7,8 @@ import org.apache.commons.lang3.builder.ToStringBuilder;
 
 public class SourceContentDTO {
 
+	private Long id;
+
 	@Size(min = 3, max = 30)
 	@Pattern(regexp="^[A-Z].* - fieldC1.*")
 	private String field1;
@@ -40,6 +42,14 @@ public class SourceContentDTO {
 				.append(" Field 3:", this.field3).toString().concat(this.processed!=null&&this.processed?" and has been processed":" not yet processed");
 	}
 
+	public Long getId() {
+		return id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
 	public String getField1() {
 		return field1;
 	}
@@ -0,0 +1,37 @@
+package uk.gov.hmrc.regen.common;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ItemReadListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Logs how long after JVM start the first record of the process was read, as
+ * the time-to-first-record figure for comparing launch modes.
+ */
+@Component
+public class StartupTimingListener implements ItemReadListener<Object> {
+
+	private static final Logger log = LoggerFactory.getLogger(StartupTimingListener.class);
+
+	private final AtomicBoolean first = new AtomicBoolean(true);
+
+	@Override
+	public void beforeRead() {
+	}
+
+	@Override
+	public void afterRead(Object item) {
+		if (first.compareAndSet(true, false)) {
+			log.info("Startup: first record read " + ManagementFactory.getRuntimeMXBean().getUptime() + "ms after JVM start");
+		}
+	}
+
+	@Override
+	public void onReadError(Exception ex) {
+	}
+
+}
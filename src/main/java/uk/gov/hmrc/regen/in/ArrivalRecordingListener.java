@@ -0,0 +1,52 @@
+package uk.gov.hmrc.regen.in;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Timestamp;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.listener.JobExecutionListenerSupport;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import uk.gov.hmrc.regen.common.ApplicationConfiguration;
+
+/**
+ * Records when the file being ingested arrived, against the ingest run that
+ * loads it. The file's modification time is used as the arrival time, as the
+ * move into the process directory preserves it.
+ */
+@Component
+public class ArrivalRecordingListener extends JobExecutionListenerSupport {
+
+	private static final Logger log = LoggerFactory.getLogger(ArrivalRecordingListener.class);
+
+	@Autowired
+	ApplicationConfiguration config;
+
+	private final JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	public ArrivalRecordingListener(JdbcTemplate jdbcTemplate) {
+		this.jdbcTemplate = jdbcTemplate;
+	}
+
+	@Override
+	public void beforeJob(JobExecution jobExecution) {
+		try {
+			Path file = Paths.get(new URI(config.getPROCESSED_FILE()));
+			Timestamp arrived = new Timestamp(Files.getLastModifiedTime(file).toMillis());
+
+			jdbcTemplate.update("INSERT INTO INGEST_ARRIVAL (ingest_run, file_name, arrived_at) VALUES (?, ?, ?)",
+					jobExecution.getId(), file.getFileName().toString(), arrived);
+		} catch (Exception e) {
+			log.warn("No arrival time recorded for ingest run " + jobExecution.getId()
+					+ ", its freshness will be reported without trigger wait: " + e.getMessage());
+		}
+	}
+}
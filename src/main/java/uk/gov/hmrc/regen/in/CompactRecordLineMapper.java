@@ -0,0 +1,52 @@
+package uk.gov.hmrc.regen.in;
+
+import org.springframework.batch.item.file.LineMapper;
+import org.springframework.batch.item.file.transform.DelimitedLineTokenizer;
+import org.springframework.batch.item.file.transform.FieldSet;
+
+import uk.gov.hmrc.regen.common.CompactRecordBuffer;
+import uk.gov.hmrc.regen.common.CompactSourceRecord;
+
+/**
+ * Maps a csv line straight into the chunk's {@link CompactRecordBuffer}
+ * without the intermediate token strings, FieldSet and bean wrapping of the
+ * default line mapper. Lines that are quoted or have the wrong number of
+ * fields are handed to a {@link DelimitedLineTokenizer} so that they are
+ * parsed, or rejected, exactly as before.
+ */
+public class CompactRecordLineMapper implements LineMapper<CompactSourceRecord> {
+
+	private static final char DELIMITER = ',';
+
+	private final CompactRecordBuffer buffer;
+
+	private final DelimitedLineTokenizer tokenizer = new DelimitedLineTokenizer();
+
+	public CompactRecordLineMapper(final CompactRecordBuffer buffer) {
+		this.buffer = buffer;
+		tokenizer.setNames(new String[] { "field1", "field2", "field3" });
+	}
+
+	@Override
+	public CompactSourceRecord mapLine(String line, int lineNumber) throws Exception {
+		int first = line.indexOf(DELIMITER);
+		int second = first < 0 ? -1 : line.indexOf(DELIMITER, first + 1);
+		boolean simple = second >= 0 && line.indexOf(DELIMITER, second + 1) < 0 && line.indexOf('"') < 0;
+
+		if (!simple) {
+			FieldSet fs = tokenizer.tokenize(line);
+			CompactSourceRecord record = buffer.nextRecord();
+			for (int i = 0; i < CompactSourceRecord.FIELD_COUNT; i++) {
+				String value = fs.readString(i);
+				buffer.copyField(record, i, value, 0, value.length());
+			}
+			return record;
+		}
+
+		CompactSourceRecord record = buffer.nextRecord();
+		buffer.copyField(record, 0, line, 0, first);
+		buffer.copyField(record, 1, line, first + 1, second);
+		buffer.copyField(record, 2, line, second + 1, line.length());
+		return record;
+	}
+}
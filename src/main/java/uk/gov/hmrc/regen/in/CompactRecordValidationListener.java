@@ -0,0 +1,101 @@
+package uk.gov.hmrc.regen.in;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.util.regex.Matcher;
+
+import javax.annotation.PostConstruct;
+import javax.validation.constraints.Pattern;
+import javax.validation.constraints.Size;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ItemReadListener;
+import org.springframework.batch.item.validator.ValidationException;
+import org.springframework.stereotype.Component;
+
+import uk.gov.hmrc.regen.common.CompactSourceRecord;
+import uk.gov.hmrc.regen.common.SourceContentDTO;
+
+/**
+ * Applies the {@link SourceContentDTO} constraints to a
+ * {@link CompactSourceRecord} directly against its field views, so valid
+ * records are checked without materialising any strings.
+ * <p>
+ * The {@link Size} and {@link Pattern} constraints are read from the DTO's
+ * field annotations at startup, so both modes validate against the same
+ * rules. Any other constraint on those fields fails startup rather than being
+ * silently skipped in compact mode.
+ */
+@Component
+public class CompactRecordValidationListener implements ItemReadListener<CompactSourceRecord> {
+
+	private static final Logger log = LoggerFactory.getLogger(CompactRecordValidationListener.class);
+
+	private static final String[] NAMES = { "field1", "field2", "field3" };
+
+	private final int[] minSizes = new int[CompactSourceRecord.FIELD_COUNT];
+
+	private final int[] maxSizes = new int[CompactSourceRecord.FIELD_COUNT];
+
+	private final String[] regexps = new String[CompactSourceRecord.FIELD_COUNT];
+
+	private final Matcher[] matchers = new Matcher[CompactSourceRecord.FIELD_COUNT];
+
+	@PostConstruct
+	public void readConstraints() throws NoSuchFieldException {
+		for (int i = 0; i < CompactSourceRecord.FIELD_COUNT; i++) {
+			Field field = SourceContentDTO.class.getDeclaredField(NAMES[i]);
+			minSizes[i] = 0;
+			maxSizes[i] = Integer.MAX_VALUE;
+
+			for (Annotation annotation : field.getAnnotations()) {
+				if (annotation instanceof Size) {
+					minSizes[i] = ((Size) annotation).min();
+					maxSizes[i] = ((Size) annotation).max();
+				} else if (annotation instanceof Pattern) {
+					regexps[i] = ((Pattern) annotation).regexp();
+					matchers[i] = java.util.regex.Pattern.compile(regexps[i]).matcher("");
+				} else if (annotation.annotationType().getPackage().getName().startsWith("javax.validation")) {
+					throw new IllegalStateException("Constraint " + annotation + " on SourceContentDTO." + NAMES[i]
+							+ " is not supported in compact record mode");
+				}
+			}
+			log.debug("Compact validation for " + NAMES[i] + ": size " + minSizes[i] + "-" + maxSizes[i] + ", pattern " + regexps[i]);
+		}
+	}
+
+	@Override
+	public void beforeRead() {
+	}
+
+	@Override
+	public void afterRead(CompactSourceRecord item) {
+		StringBuffer buff = null;
+
+		for (int i = 0; i < CompactSourceRecord.FIELD_COUNT; i++) {
+			int len = item.fieldLength(i);
+			if (len < minSizes[i] || len > maxSizes[i]) {
+				buff = violation(buff, NAMES[i], item.field(i), "size must be between " + minSizes[i] + " and " + maxSizes[i]);
+			}
+			if (matchers[i] != null && !matchers[i].reset(item.field(i)).matches()) {
+				buff = violation(buff, NAMES[i], item.field(i), "must match \"" + regexps[i] + "\"");
+			}
+		}
+
+		if (buff != null) {
+			log.error(buff.toString());
+			throw new ValidationException(buff.toString());
+		}
+	}
+
+	private static StringBuffer violation(StringBuffer buff, String name, CharSequence value, String message) {
+		StringBuffer b = buff == null ? new StringBuffer() : buff;
+		return b.append(name + ":" + value + "-->" + message + "\n");
+	}
+
+	@Override
+	public void onReadError(Exception ex) {
+	}
+
+}
@@ -10,14 +10,15 @@ import javax.validation.Validator;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ChunkListener;
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.Step;
 import org.springframework.batch.core.configuration.annotation.EnableBatchProcessing;
 import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
 import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
 import org.springframework.batch.item.ItemProcessor;
-import org.springframework.batch.item.database.BeanPropertyItemSqlParameterSourceProvider;
 import org.springframework.batch.item.database.JdbcBatchItemWriter;
 import org.springframework.batch.item.file.FlatFileItemReader;
 import org.springframework.batch.item.file.mapping.BeanWrapperFieldSetMapper;
@@ -25,13 +26,18 @@ import org.springframework.batch.item.file.mapping.DefaultLineMapper;
 import org.springframework.batch.item.file.transform.DelimitedLineTokenizer;
 import org.springframework.batch.item.support.CompositeItemProcessor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.UrlResource;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
 
 import uk.gov.hmrc.regen.common.ApplicationConfiguration;
+import uk.gov.hmrc.regen.common.CompactRecordBuffer;
+import uk.gov.hmrc.regen.common.CompactSourceRecord;
 import uk.gov.hmrc.regen.common.SourceContentDTO;
+import uk.gov.hmrc.regen.common.StartupTimingListener;
 
 @EnableBatchProcessing
 @Configuration
@@ -53,6 +59,12 @@ public class CsvFileToDatabaseConfig {
 	@Autowired 
 	private RecordValidationListener validationListener;
 
+	@Autowired
+	private CompactRecordValidationListener compactValidationListener;
+
+	@Autowired
+	private StartupTimingListener startupTimingListener;
+
 	@Bean
 	public FlatFileItemReader<SourceContentDTO> csvFileReader() throws MalformedURLException {
 		FlatFileItemReader<SourceContentDTO> reader = new FlatFileItemReader<SourceContentDTO>();
@@ -108,14 +120,71 @@ public class CsvFileToDatabaseConfig {
 	}
 
 	@Bean
-	public JdbcBatchItemWriter<SourceContentDTO> toDBWriter() {
+	@StepScope
+	public JdbcBatchItemWriter<SourceContentDTO> toDBWriter(@Value("#{stepExecution.jobExecutionId}") Long ingestRun) {
 		JdbcBatchItemWriter<SourceContentDTO> toDBWriter = new JdbcBatchItemWriter<SourceContentDTO>();
-		toDBWriter.setItemSqlParameterSourceProvider(new BeanPropertyItemSqlParameterSourceProvider<SourceContentDTO>());
-		toDBWriter.setSql("INSERT INTO FIELDS (field1, field2, field3, processed) VALUES (:field1, :field2, :field3, false)");
+		// Ingest run ties each row back to its file arrival for freshness tracking
+		toDBWriter.setItemSqlParameterSourceProvider((item) -> new MapSqlParameterSource("field1", item.getField1())
+				.addValue("field2", item.getField2()).addValue("field3", item.getField3()).addValue("ingestRun", ingestRun));
+		toDBWriter.setSql("INSERT INTO FIELDS (field1, field2, field3, processed, ingest_run) VALUES (:field1, :field2, :field3, false, :ingestRun)");
+		toDBWriter.setDataSource(dataSource);
+		return toDBWriter;
+	}
+
+
+	@Bean
+	public CompactRecordBuffer compactRecordBuffer() {
+		return new CompactRecordBuffer();
+	}
+
+	@Bean
+	public FlatFileItemReader<CompactSourceRecord> compactCsvFileReader() throws MalformedURLException {
+		FlatFileItemReader<CompactSourceRecord> reader = new FlatFileItemReader<CompactSourceRecord>();
+		reader.setStrict(false); // Don't fail if file not there
+
+		reader.setResource(new UrlResource(config.getPROCESSED_FILE()));
+		reader.setLineMapper(new CompactRecordLineMapper(compactRecordBuffer()));
+		return reader;
+	}
+
+	@Bean
+	ItemProcessor<CompactSourceRecord, CompactSourceRecord> compactCsvFileProcessor() {
+		return (record) -> {
+			// Prefix is applied when the record is rendered by the writer
+			record.setPrefix("READ:");
+			return record;
+		};
+	}
+
+	@Bean
+	@StepScope
+	public JdbcBatchItemWriter<CompactSourceRecord> compactToDBWriter(@Value("#{stepExecution.jobExecutionId}") Long ingestRun) {
+		JdbcBatchItemWriter<CompactSourceRecord> toDBWriter = new JdbcBatchItemWriter<CompactSourceRecord>();
+		toDBWriter.setItemPreparedStatementSetter((record, ps) -> {
+			ps.setString(1, record.render(0));
+			ps.setString(2, record.render(1));
+			ps.setString(3, record.render(2));
+			ps.setLong(4, ingestRun);
+		});
+		toDBWriter.setSql("INSERT INTO FIELDS (field1, field2, field3, processed, ingest_run) VALUES (?, ?, ?, false, ?)");
 		toDBWriter.setDataSource(dataSource);
 		return toDBWriter;
 	}
 
+	@Bean
+	public Step csvFileToDatabaseCompactStep() throws Exception {
+
+		return stepBuilderFactory.get("csvFileToDatabaseCompactStep").allowStartIfComplete(true).
+				<CompactSourceRecord, CompactSourceRecord> chunk(5).
+				faultTolerant().noSkip(ValidationException.class).
+				reader(compactCsvFileReader()).
+				processor(compactCsvFileProcessor()).
+				writer(compactToDBWriter(null)).
+				listener(compactValidationListener).
+				listener(startupTimingListener).
+				listener((ChunkListener) compactRecordBuffer()).
+				build();
+	}
 
 	@Bean
 	public Step csvFileToDatabaseStep() throws Exception {
@@ -125,15 +194,16 @@ public class CsvFileToDatabaseConfig {
 				faultTolerant().noSkip(ValidationException.class).
 				reader(csvFileReader()).
 				processor(csvFileProcessor()).
-				writer(toDBWriter()).
+				writer(toDBWriter(null)).
 				listener(validationListener).
+				listener(startupTimingListener).
 				build();
 	}
 
 	@Bean
-	Job csvFileToDatabaseJob(FileReadCompletionListener listener) throws Exception {
-		return jobBuilderFactory.get("csvFileToDatabaseJob").incrementer(new RunIdIncrementer()).listener(listener)
-				.flow(csvFileToDatabaseStep()).end().build();
+	Job csvFileToDatabaseJob(FileReadCompletionListener listener, ArrivalRecordingListener arrivalListener) throws Exception {
+		return jobBuilderFactory.get("csvFileToDatabaseJob").incrementer(new RunIdIncrementer()).listener(arrivalListener).listener(listener)
+				.flow(config.isCOMPACT_RECORDS() ? csvFileToDatabaseCompactStep() : csvFileToDatabaseStep()).end().build();
 	}
 	// end job info
 }
@@ -10,6 +10,7 @@ import org.springframework.batch.core.JobExecution;
 import org.springframework.batch.core.listener.JobExecutionListenerSupport;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Component;
 
 import uk.gov.hmrc.regen.common.SourceContentDTO;
@@ -28,17 +29,21 @@ public class FileReadCompletionListener extends JobExecutionListenerSupport {
 
 	@Override
 	public void afterJob(JobExecution jobExecution) {
+		// Only this run's rows and steps, and only when they will be logged, the table may be far larger than the heap
+		if (!log.isDebugEnabled()) {
+			return;
+		}
+
 		if(jobExecution.getStatus() == BatchStatus.COMPLETED) {
 			log.debug("============ JOB FINISHED ============ Verifying the results....\n");
 
-			List<SourceContentDTO> results = jdbcTemplate.query("SELECT field1, field2, field3, processed FROM FIELDS", 
-					(ResultSet rs, int row) -> new SourceContentDTO(rs.getString(1), rs.getString(2), rs.getString(3), rs.getBoolean(4)));
-
-			results.forEach((x) -> log.debug("Discovered <" + x + "> in the database."));
+			jdbcTemplate.query("SELECT field1, field2, field3, processed FROM FIELDS WHERE ingest_run = ?", 
+					(RowCallbackHandler) (ResultSet rs) -> log.debug("Discovered <" + new SourceContentDTO(rs.getString(1), rs.getString(2), rs.getString(3), rs.getBoolean(4)) + "> in the database."),
+					jobExecution.getId());
 		}
 		
-		List<BatchStepInstance> results = jdbcTemplate.query("SELECT step_execution_id, job_execution_id, status, exit_code FROM BATCH_STEP_EXECUTION", 
-				(ResultSet rs, int row) -> new BatchStepInstance(rs.getLong(1), rs.getLong(2), rs.getString(3), rs.getString(4)));
+		List<BatchStepInstance> results = jdbcTemplate.query("SELECT step_execution_id, job_execution_id, status, exit_code FROM BATCH_STEP_EXECUTION WHERE job_execution_id = ?", 
+				(ResultSet rs, int row) -> new BatchStepInstance(rs.getLong(1), rs.getLong(2), rs.getString(3), rs.getString(4)), jobExecution.getId());
 		results.forEach((x) -> log.debug("Spring Batch <" + x + "> in the database."));
 	}
 	
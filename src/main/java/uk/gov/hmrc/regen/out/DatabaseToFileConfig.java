@@ -3,6 +3,7 @@ package uk.gov.hmrc.regen.out;
 import java.io.File;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 
 import javax.sql.DataSource;
@@ -14,27 +15,32 @@ import org.springframework.batch.core.Step;
 import org.springframework.batch.core.configuration.annotation.EnableBatchProcessing;
 import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
 import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
 import org.springframework.batch.item.ItemProcessor;
 import org.springframework.batch.item.ItemReader;
+import org.springframework.batch.item.ItemStreamReader;
 import org.springframework.batch.item.ItemWriter;
-import org.springframework.batch.item.database.BeanPropertyItemSqlParameterSourceProvider;
 import org.springframework.batch.item.database.JdbcBatchItemWriter;
-import org.springframework.batch.item.database.JdbcCursorItemReader;
 import org.springframework.batch.item.file.FlatFileItemWriter;
 import org.springframework.batch.item.file.transform.BeanWrapperFieldExtractor;
 import org.springframework.batch.item.file.transform.FieldExtractor;
 import org.springframework.batch.item.file.transform.FormatterLineAggregator;
 import org.springframework.batch.item.file.transform.LineAggregator;
-import org.springframework.batch.item.support.CompositeItemWriter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.util.StringUtils;
 
 import uk.gov.hmrc.regen.common.ApplicationConfiguration;
+import uk.gov.hmrc.regen.common.ConcurrentCompositeItemWriter;
 import uk.gov.hmrc.regen.common.SourceContentDTO;
+import uk.gov.hmrc.regen.common.StartupTimingListener;
 
 @EnableBatchProcessing
 @Configuration
@@ -53,17 +59,61 @@ public class DatabaseToFileConfig {
 	@Autowired
 	public DataSource dataSource;
 
+	@Autowired
+	private StartupTimingListener startupTimingListener;
+
 	@Bean
-	ItemReader<SourceContentDTO> dbItemReader() {
-		JdbcCursorItemReader<SourceContentDTO> databaseReader = new JdbcCursorItemReader<>();
+	ItemStreamReader<SourceContentDTO> dbItemReader() {
+		PrefetchingKeysetItemReader<SourceContentDTO> databaseReader = new PrefetchingKeysetItemReader<>();
 
+		databaseReader.setName("dbItemReader");
 		databaseReader.setDataSource(dataSource);
-		databaseReader.setSql("SELECT field1, field2, field3 FROM fields WHERE processed is not true");
+		databaseReader.setSelectClause("SELECT id, field1, field2, field3 FROM fields");
+		databaseReader.setWhereClause("processed is not true");
+		databaseReader.setKeyColumn("id");
+		databaseReader.setPageSize(config.getEXPORT_PAGE_SIZE());
+		databaseReader.setPrefetchDepth(config.getEXPORT_PREFETCH_DEPTH());
 		databaseReader.setRowMapper(new BeanPropertyRowMapper<>(SourceContentDTO.class));
 
 		return databaseReader;
 	}
 
+	/**
+	 * Only built when an export sort field is configured, and then from the step
+	 * definition so that an unknown field fails startup.
+	 */
+	private ItemReader<SourceContentDTO> createSortedDbItemReader(final String sortField) throws Exception {
+		ExternalSortItemReader<SourceContentDTO> sortedReader = new ExternalSortItemReader<>();
+		PrefetchingKeysetItemReader<SourceContentDTO> keysetReader = (PrefetchingKeysetItemReader<SourceContentDTO>) dbItemReader();
+
+		sortedReader.setName("sortedDbItemReader");
+		sortedReader.setDelegate(keysetReader);
+		// A restart only re-sorts the rows of the original drain, so rows ingested since cannot land out of order
+		sortedReader.setKeyExtractor(SourceContentDTO::getId);
+		sortedReader.setKeyBound(keysetReader::setMaxKey);
+		sortedReader.setComparator(createSortOrder(sortField));
+		sortedReader.setCodec(new SourceContentRecordCodec());
+		sortedReader.setRunSize(config.getEXPORT_SORT_RUN_SIZE());
+		sortedReader.afterPropertiesSet();
+
+		return sortedReader;
+	}
+
+	private Comparator<SourceContentDTO> createSortOrder(final String field) {
+		Comparator<String> nullsFirst = Comparator.nullsFirst(Comparator.<String> naturalOrder());
+		switch (field) {
+		case "field1":
+			return Comparator.comparing(SourceContentDTO::getField1, nullsFirst);
+		case "field2":
+			return Comparator.comparing(SourceContentDTO::getField2, nullsFirst);
+		case "field3":
+			return Comparator.comparing(SourceContentDTO::getField3, nullsFirst);
+		default:
+			throw new IllegalArgumentException("Unsupported input.exportSortField '" + field
+					+ "', expected field1, field2, field3 or empty for unsorted export");
+		}
+	}
+
 	@Bean
 	ItemProcessor<SourceContentDTO, SourceContentDTO> dbContentProcessor() {
 		return (dbContentDTO) -> dbContentDTO;
@@ -94,25 +144,44 @@ public class DatabaseToFileConfig {
 		LineAggregator<SourceContentDTO> lineAggregator = createSourceLineAggregator();
 		outputFileWriter.setLineAggregator(lineAggregator);
 		outputFileWriter.setShouldDeleteIfEmpty(true);
+		// Written off the chunk thread by outputWriter(). A failed run leaves the file in place (see QuartzConfiguration)
+		// and the restart truncates it to the last committed position before writing on
+		outputFileWriter.setTransactional(false);
 
 		return outputFileWriter;
 	}
 
 	@Bean
-	public JdbcBatchItemWriter<SourceContentDTO> updateDBWriter() {
+	@StepScope
+	public JdbcBatchItemWriter<SourceContentDTO> updateDBWriter(@Value("#{stepExecution.jobExecutionId}") Long exportRun) {
 		JdbcBatchItemWriter<SourceContentDTO> toDBWriter = new JdbcBatchItemWriter<SourceContentDTO>();
-		toDBWriter.setItemSqlParameterSourceProvider(new BeanPropertyItemSqlParameterSourceProvider<SourceContentDTO>());
-		toDBWriter.setSql("UPDATE fields SET processed = true WHERE field1 = :field1");
+		// Export run and time allow exported rows to be archived run by run
+		toDBWriter.setItemSqlParameterSourceProvider(
+				(item) -> new MapSqlParameterSource("id", item.getId()).addValue("exportRun", exportRun));
+		toDBWriter.setSql("UPDATE fields SET processed = true, exported_at = CURRENT_TIMESTAMP, export_run = :exportRun WHERE id = :id");
 		toDBWriter.setDataSource(dataSource);
 		return toDBWriter;
 	}
+
+	@Bean
+	public ThreadPoolTaskExecutor outputWriterExecutor() {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(config.getOUTPUT_WRITER_THREADS());
+		executor.setMaxPoolSize(config.getOUTPUT_WRITER_THREADS());
+		executor.setThreadNamePrefix("output-writer-");
+		return executor;
+	}
+
 	@Bean
 	ItemWriter<SourceContentDTO> outputWriter() throws Exception {
-		CompositeItemWriter<SourceContentDTO> writer = new CompositeItemWriter<>();
-		List<ItemWriter<? super SourceContentDTO>> allWriters = new ArrayList<>(2);
-		allWriters.add(fileItemWriter());
-		allWriters.add(updateDBWriter());
-		writer.setDelegates(allWriters);
+		ConcurrentCompositeItemWriter<SourceContentDTO> writer = new ConcurrentCompositeItemWriter<>();
+		List<ItemWriter<? super SourceContentDTO>> pooledWriters = new ArrayList<>(1);
+		pooledWriters.add(fileItemWriter());
+		List<ItemWriter<? super SourceContentDTO>> txWriters = new ArrayList<>(1);
+		txWriters.add(updateDBWriter(null));
+		writer.setDelegates(pooledWriters);
+		writer.setTransactionalDelegates(txWriters);
+		writer.setTaskExecutor(outputWriterExecutor());
 		return writer;
 	}
 	
@@ -122,13 +191,15 @@ public class DatabaseToFileConfig {
 	public Step datatabaseToFileStep(DBReadStepCompletionListener listener) throws Exception {
 
 		return stepBuilderFactory.get("datatabaseToFileStep").allowStartIfComplete(true)
-				.<SourceContentDTO, SourceContentDTO> chunk(5).reader(dbItemReader()).processor(dbContentProcessor())
-				.writer(outputWriter()).listener(listener).build();
+				.<SourceContentDTO, SourceContentDTO> chunk(5)
+				.reader(StringUtils.hasText(config.getEXPORT_SORT_FIELD()) ? createSortedDbItemReader(config.getEXPORT_SORT_FIELD().trim()) : dbItemReader())
+				.processor(dbContentProcessor())
+				.writer(outputWriter()).listener(listener).listener(startupTimingListener).build();
 	}
 
 	@Bean
-	Job databaseToFileJob(DBReadStepCompletionListener listener) throws Exception {
-		return jobBuilderFactory.get("databaseToFileJob").incrementer(new RunIdIncrementer())
+	Job databaseToFileJob(DBReadStepCompletionListener listener, FreshnessRecordingListener freshnessListener) throws Exception {
+		return jobBuilderFactory.get("databaseToFileJob").incrementer(new RunIdIncrementer()).listener(freshnessListener)
 				.flow(datatabaseToFileStep(listener)).end().build();
 	}
 	// end job info
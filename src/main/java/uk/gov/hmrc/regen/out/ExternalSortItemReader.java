@@ -0,0 +1,322 @@
+package uk.gov.hmrc.regen.out;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+/**
+ * Returns the items of its delegate in comparator order using an external
+ * merge sort, so the amount sorted is not limited by the heap. On the first
+ * read the delegate is drained into sorted runs of at most {@code runSize}
+ * items, each spilled to a temporary file; the runs are then merged lazily as
+ * the step reads, with at most {@code maxFanIn} run files open at once.
+ * <p>
+ * No read position is saved: a restarted step sorts whatever the delegate
+ * still returns (for the export, the rows not yet marked processed) from
+ * scratch. So that this is only what remains of the original sort, and not
+ * rows added since that may sort before items already handed out, the highest
+ * key drained on the first run is saved on update and passed to
+ * {@code keyBound} before the delegate is reopened on restart. Without a key
+ * extractor and bound, the order is only guaranteed for runs that are not
+ * restarted.
+ */
+public class ExternalSortItemReader<T> implements ItemStreamReader<T>, InitializingBean {
+
+	private static final Logger log = LoggerFactory.getLogger(ExternalSortItemReader.class);
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Writes and reads back one item of a spilled run.
+	 */
+	public interface RecordCodec<T> {
+		void write(DataOutputStream out, T item) throws IOException;
+
+		T read(DataInputStream in) throws IOException;
+	}
+
+	private static final String MAX_KEY = "maxKey";
+
+	private String name = ExternalSortItemReader.class.getSimpleName();
+
+	private ItemStreamReader<T> delegate;
+
+	private Function<? super T, Long> keyExtractor;
+
+	private Consumer<Long> keyBound;
+
+	private Long maxKey;
+
+	private Comparator<? super T> comparator;
+
+	private RecordCodec<T> codec;
+
+	private int runSize = 100000;
+
+	private int maxFanIn = 64;
+
+	private Path workDir;
+
+	private boolean sorted;
+
+	private Iterator<T> inMemory;
+
+	private PriorityQueue<Run> merge;
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public void setDelegate(ItemStreamReader<T> delegate) {
+		this.delegate = delegate;
+	}
+
+	/**
+	 * @param keyExtractor the increasing key of each item read from the delegate
+	 */
+	public void setKeyExtractor(Function<? super T, Long> keyExtractor) {
+		this.keyExtractor = keyExtractor;
+	}
+
+	/**
+	 * @param keyBound told the highest key the delegate may return from its next
+	 *                 open, or null for no limit
+	 */
+	public void setKeyBound(Consumer<Long> keyBound) {
+		this.keyBound = keyBound;
+	}
+
+	public void setComparator(Comparator<? super T> comparator) {
+		this.comparator = comparator;
+	}
+
+	public void setCodec(RecordCodec<T> codec) {
+		this.codec = codec;
+	}
+
+	public void setRunSize(int runSize) {
+		this.runSize = runSize;
+	}
+
+	public void setMaxFanIn(int maxFanIn) {
+		this.maxFanIn = maxFanIn;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		Assert.notNull(delegate, "A delegate reader is required");
+		Assert.notNull(comparator, "A comparator is required");
+		Assert.notNull(codec, "A record codec is required");
+		Assert.isTrue(runSize > 0, "The run size must be positive");
+		Assert.isTrue(maxFanIn > 1, "The merge fan-in must be at least 2");
+		Assert.isTrue((keyExtractor == null) == (keyBound == null), "A key extractor and key bound go together");
+	}
+
+	@Override
+	public void open(ExecutionContext executionContext) throws ItemStreamException {
+		// The delegate always starts from the beginning, limited to the first run's keys on restart
+		maxKey = executionContext.containsKey(contextKey()) ? executionContext.getLong(contextKey()) : null;
+		if (keyBound != null) {
+			keyBound.accept(maxKey);
+		}
+		delegate.open(new ExecutionContext());
+		sorted = false;
+		inMemory = null;
+		merge = null;
+	}
+
+	@Override
+	public T read() throws Exception {
+		if (!sorted) {
+			sort();
+			sorted = true;
+		}
+
+		if (inMemory != null) {
+			return inMemory.hasNext() ? inMemory.next() : null;
+		}
+
+		Run run = merge.poll();
+		if (run == null) {
+			return null;
+		}
+		T item = run.current;
+		if (run.advance()) {
+			merge.add(run);
+		}
+		return item;
+	}
+
+	@Override
+	public void update(ExecutionContext executionContext) throws ItemStreamException {
+		if (maxKey != null) {
+			executionContext.putLong(contextKey(), maxKey);
+		}
+	}
+
+	@Override
+	public void close() throws ItemStreamException {
+		delegate.close();
+
+		if (merge != null) {
+			for (Run run : merge) {
+				run.close();
+			}
+			merge = null;
+		}
+		inMemory = null;
+
+		if (workDir != null) {
+			try (Stream<Path> files = Files.list(workDir)) {
+				files.forEach(f -> f.toFile().delete());
+			} catch (IOException e) {
+				log.error("Unable to clear sort directory " + workDir + ": " + e.getMessage());
+			}
+			workDir.toFile().delete();
+			workDir = null;
+		}
+	}
+
+	private void sort() throws Exception {
+		List<T> buffer = new ArrayList<>(Math.min(runSize, 1024));
+		List<Path> runs = new ArrayList<>();
+		long count = 0;
+
+		boolean bounded = maxKey != null;
+		T item;
+		while ((item = delegate.read()) != null) {
+			buffer.add(item);
+			count++;
+			if (keyExtractor != null && !bounded) {
+				Long key = keyExtractor.apply(item);
+				if (key != null && (maxKey == null || key > maxKey)) {
+					maxKey = key;
+				}
+			}
+			if (buffer.size() >= runSize) {
+				runs.add(spill(buffer));
+				buffer.clear();
+			}
+		}
+
+		if (runs.isEmpty()) {
+			buffer.sort(comparator);
+			inMemory = buffer.iterator();
+			log.debug("Sorted " + count + " items in memory");
+			return;
+		}
+
+		if (!buffer.isEmpty()) {
+			runs.add(spill(buffer));
+		}
+		buffer = null;
+
+		while (runs.size() > maxFanIn) {
+			List<Path> batch = runs.subList(0, maxFanIn);
+			Path merged = mergeToFile(new ArrayList<>(batch));
+			batch.clear();
+			runs.add(merged);
+		}
+
+		merge = openRuns(runs);
+		log.info("Sorting " + count + " items through " + runs.size() + " spilled runs in " + workDir);
+	}
+
+	private String contextKey() {
+		return name + "." + MAX_KEY;
+	}
+
+	private Path spill(final List<T> items) throws IOException {
+		if (workDir == null) {
+			workDir = Files.createTempDirectory("export-sort");
+		}
+
+		items.sort(comparator);
+		Path file = Files.createTempFile(workDir, "run", ".bin");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE))) {
+			for (T item : items) {
+				out.writeBoolean(true);
+				codec.write(out, item);
+			}
+			out.writeBoolean(false);
+		}
+		return file;
+	}
+
+	private Path mergeToFile(final List<Path> runs) throws IOException {
+		PriorityQueue<Run> queue = openRuns(runs);
+		Path file = Files.createTempFile(workDir, "merge", ".bin");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE))) {
+			Run run;
+			while ((run = queue.poll()) != null) {
+				out.writeBoolean(true);
+				codec.write(out, run.current);
+				if (run.advance()) {
+					queue.add(run);
+				}
+			}
+			out.writeBoolean(false);
+		}
+		for (Path merged : runs) {
+			Files.delete(merged);
+		}
+		return file;
+	}
+
+	private PriorityQueue<Run> openRuns(final List<Path> runs) throws IOException {
+		PriorityQueue<Run> queue = new PriorityQueue<>(runs.size(), (a, b) -> comparator.compare(a.current, b.current));
+		for (Path file : runs) {
+			Run run = new Run(new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE)));
+			if (run.advance()) {
+				queue.add(run);
+			}
+		}
+		return queue;
+	}
+
+	private class Run {
+		private final DataInputStream in;
+		private T current;
+
+		private Run(final DataInputStream in) {
+			this.in = in;
+		}
+
+		private boolean advance() throws IOException {
+			if (!in.readBoolean()) {
+				close();
+				return false;
+			}
+			current = codec.read(in);
+			return true;
+		}
+
+		private void close() {
+			try {
+				in.close();
+			} catch (IOException e) {
+				log.debug("Unable to close sort run: " + e.getMessage());
+			}
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package uk.gov.hmrc.regen.out;
+
+import java.sql.Timestamp;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.listener.JobExecutionListenerSupport;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Once an export completes, summarises its rows into FRESHNESS, one row per
+ * ingest run and export run with the record count and the time each stage
+ * started and ended. Rows written by an earlier failed attempt reach the
+ * output file with this completion, so they are summarised now too. Rows
+ * exported while their ingest was still running, or by an export that started
+ * before their ingest ended, are taken as committed when the export started.
+ * A batch whose arrival time was not recorded is kept with an empty
+ * arrived_at.
+ */
+@Component
+public class FreshnessRecordingListener extends JobExecutionListenerSupport {
+
+	private static final Logger log = LoggerFactory.getLogger(FreshnessRecordingListener.class);
+
+	private final JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	public FreshnessRecordingListener(JdbcTemplate jdbcTemplate) {
+		this.jdbcTemplate = jdbcTemplate;
+	}
+
+	@Override
+	public void afterJob(JobExecution jobExecution) {
+		if (jobExecution.getStatus() != BatchStatus.COMPLETED) {
+			return;
+		}
+
+		try {
+			int batches = jdbcTemplate.update("INSERT INTO FRESHNESS (ingest_run, export_run, records, arrived_at, "
+					+ "ingest_started_at, ingest_committed_at, export_started_at, output_at) "
+					+ "SELECT f.ingest_run, f.export_run, COUNT(*), a.arrived_at, ie.START_TIME, LEAST(COALESCE(ie.END_TIME, ee.START_TIME), ee.START_TIME), ee.START_TIME, ? "
+					+ "FROM FIELDS f "
+					+ "LEFT JOIN INGEST_ARRIVAL a ON a.ingest_run = f.ingest_run "
+					+ "JOIN BATCH_JOB_EXECUTION ie ON ie.JOB_EXECUTION_ID = f.ingest_run "
+					+ "JOIN BATCH_JOB_EXECUTION ee ON ee.JOB_EXECUTION_ID = f.export_run "
+					+ "WHERE f.export_run IN (SELECT JOB_EXECUTION_ID FROM BATCH_JOB_EXECUTION WHERE JOB_INSTANCE_ID = ? "
+					+ "AND JOB_EXECUTION_ID NOT IN (SELECT export_run FROM FRESHNESS)) "
+					+ "GROUP BY f.ingest_run, f.export_run, a.arrived_at, ie.START_TIME, ie.END_TIME, ee.START_TIME",
+					new Timestamp(jobExecution.getEndTime() != null ? jobExecution.getEndTime().getTime() : System.currentTimeMillis()), jobExecution.getJobInstance().getId());
+			log.debug("Recorded freshness of " + batches + " ingest batches for export run " + jobExecution.getId());
+		} catch (Exception e) {
+			log.error("Unable to record freshness for export run " + jobExecution.getId() + ": " + e.getMessage());
+		}
+	}
+}
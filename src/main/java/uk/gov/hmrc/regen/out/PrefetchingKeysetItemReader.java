@@ -0,0 +1,224 @@
+package uk.gov.hmrc.regen.out;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.util.Assert;
+
+/**
+ * Reads a table in key order one page at a time
+ * ({@code WHERE key > ? ORDER BY key LIMIT n}) instead of holding a single
+ * cursor open for the whole step. A background thread fetches the following
+ * pages while the current chunk is processed and written, keeping at most
+ * {@code prefetchDepth} pages queued ahead of the reader.
+ * <p>
+ * The key of the last item handed to the step is saved on each update, so a
+ * restarted step carries on from the last committed key. An optional maximum
+ * key limits the read to rows that existed at some earlier point, e.g. for a
+ * caller that has to see the same rows again on restart.
+ */
+public class PrefetchingKeysetItemReader<T> implements ItemStreamReader<T>, InitializingBean {
+
+	private static final Logger log = LoggerFactory.getLogger(PrefetchingKeysetItemReader.class);
+
+	private static final String LAST_KEY = "lastKey";
+
+	private DataSource dataSource;
+
+	private String name = PrefetchingKeysetItemReader.class.getSimpleName();
+
+	private String selectClause;
+
+	private String whereClause;
+
+	private String keyColumn;
+
+	private RowMapper<T> rowMapper;
+
+	private int pageSize = 100;
+
+	private int prefetchDepth = 1;
+
+	private Long maxKey;
+
+	private String sql;
+
+	private BlockingQueue<Page<T>> pages;
+
+	private Thread fetcher;
+
+	private Page<T> current;
+
+	private int index;
+
+	private boolean exhausted;
+
+	private long lastKey;
+
+	public void setDataSource(DataSource dataSource) {
+		this.dataSource = dataSource;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public void setSelectClause(String selectClause) {
+		this.selectClause = selectClause;
+	}
+
+	public void setWhereClause(String whereClause) {
+		this.whereClause = whereClause;
+	}
+
+	public void setKeyColumn(String keyColumn) {
+		this.keyColumn = keyColumn;
+	}
+
+	public void setRowMapper(RowMapper<T> rowMapper) {
+		this.rowMapper = rowMapper;
+	}
+
+	public void setPageSize(int pageSize) {
+		this.pageSize = pageSize;
+	}
+
+	public void setPrefetchDepth(int prefetchDepth) {
+		this.prefetchDepth = prefetchDepth;
+	}
+
+	/**
+	 * @param maxKey the highest key to read, or null for no limit; applies from the next open
+	 */
+	public void setMaxKey(Long maxKey) {
+		this.maxKey = maxKey;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		Assert.notNull(dataSource, "A DataSource is required");
+		Assert.hasText(selectClause, "A select clause is required");
+		Assert.hasText(keyColumn, "A key column is required");
+		Assert.notNull(rowMapper, "A RowMapper is required");
+		Assert.isTrue(pageSize > 0, "The page size must be positive");
+		Assert.isTrue(prefetchDepth > 0, "The prefetch depth must be positive");
+	}
+
+	@Override
+	public void open(ExecutionContext executionContext) throws ItemStreamException {
+		lastKey = executionContext.containsKey(contextKey()) ? executionContext.getLong(contextKey()) : Long.MIN_VALUE;
+		current = null;
+		index = 0;
+		exhausted = false;
+		pages = new ArrayBlockingQueue<>(prefetchDepth);
+		sql = selectClause + " WHERE " + (whereClause != null ? "(" + whereClause + ") AND " : "") + keyColumn
+				+ " > ?" + (maxKey != null ? " AND " + keyColumn + " <= " + maxKey : "") + " ORDER BY " + keyColumn
+				+ " LIMIT " + pageSize;
+
+		final long startKey = lastKey;
+		fetcher = new Thread(() -> fetchFrom(startKey), name + "-prefetch");
+		fetcher.setDaemon(true);
+		fetcher.start();
+		log.debug("Reading " + name + " from key " + startKey + (maxKey != null ? " to " + maxKey : ""));
+	}
+
+	@Override
+	public T read() throws Exception {
+		if (exhausted) {
+			return null;
+		}
+
+		if (current == null || index >= current.items.size()) {
+			if (current != null && current.last) {
+				exhausted = true;
+				return null;
+			}
+
+			current = pages.take();
+			index = 0;
+			if (current.error != null) {
+				throw current.error;
+			}
+			if (current.items.isEmpty()) {
+				exhausted = true;
+				return null;
+			}
+		}
+
+		lastKey = current.keys.get(index);
+		return current.items.get(index++);
+	}
+
+	@Override
+	public void update(ExecutionContext executionContext) throws ItemStreamException {
+		executionContext.putLong(contextKey(), lastKey);
+	}
+
+	@Override
+	public void close() throws ItemStreamException {
+		if (fetcher != null) {
+			fetcher.interrupt();
+			fetcher = null;
+		}
+		pages = null;
+		current = null;
+	}
+
+	private void fetchFrom(final long startKey) {
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+		BlockingQueue<Page<T>> queue = pages;
+		long key = startKey;
+
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				final Page<T> page = new Page<>();
+				page.items = jdbcTemplate.query(sql, (rs, row) -> {
+					page.keys.add(rs.getLong(keyColumn));
+					return rowMapper.mapRow(rs, row);
+				}, key);
+				page.last = page.items.size() < pageSize;
+
+				queue.put(page);
+				if (page.last) {
+					return;
+				}
+				key = page.keys.get(page.keys.size() - 1);
+			}
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		} catch (Exception e) {
+			log.error("Prefetch of " + name + " failed after key " + key + ": " + e.getMessage());
+			Page<T> failed = new Page<>();
+			failed.error = e;
+			failed.last = true;
+			try {
+				queue.put(failed);
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private String contextKey() {
+		return name + "." + LAST_KEY;
+	}
+
+	private static class Page<T> {
+		private List<T> items = new ArrayList<>();
+		private final List<Long> keys = new ArrayList<>();
+		private boolean last;
+		private Exception error;
+	}
+}
@@ -0,0 +1,40 @@
+package uk.gov.hmrc.regen.out;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import uk.gov.hmrc.regen.common.SourceContentDTO;
+
+/**
+ * Spill format of a {@link SourceContentDTO} for the sorted export.
+ */
+public class SourceContentRecordCodec implements ExternalSortItemReader.RecordCodec<SourceContentDTO> {
+
+	@Override
+	public void write(DataOutputStream out, SourceContentDTO item) throws IOException {
+		out.writeLong(item.getId());
+		writeString(out, item.getField1());
+		writeString(out, item.getField2());
+		writeString(out, item.getField3());
+	}
+
+	@Override
+	public SourceContentDTO read(DataInputStream in) throws IOException {
+		long id = in.readLong();
+		SourceContentDTO item = new SourceContentDTO(readString(in), readString(in), readString(in), null);
+		item.setId(id);
+		return item;
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+}
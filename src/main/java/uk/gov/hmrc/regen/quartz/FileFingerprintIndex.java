@@ -0,0 +1,280 @@
+package uk.gov.hmrc.regen.quartz;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import uk.gov.hmrc.regen.common.ApplicationConfiguration;
+
+/**
+ * Persistent index of the files that have been ingested, keyed by content
+ * hash. Each entry records the file size, a CRC of its first and last
+ * {@value #WINDOW} bytes and a SHA-256 of the whole content, so an incoming
+ * file can be ruled out on size and head/tail alone and only needs a full hash
+ * when those all match.
+ * <p>
+ * The index holds at most the configured number of entries, evicting the least
+ * recently ingested or matched, and is rewritten to disk after each change.
+ */
+@Component
+public class FileFingerprintIndex {
+
+	private static final Logger log = LoggerFactory.getLogger(FileFingerprintIndex.class);
+
+	private static final int WINDOW = 4096;
+
+	@Autowired
+	ApplicationConfiguration config;
+
+	private Path indexPath;
+
+	private Map<String, Fingerprint> entries;
+
+	private String lastOverlapCheck;
+
+	@PostConstruct
+	public void load() throws Exception {
+		final int maxEntries = config.getINGEST_INDEX_SIZE();
+		this.entries = new LinkedHashMap<String, Fingerprint>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Fingerprint> eldest) {
+				return size() > maxEntries;
+			}
+		};
+		this.indexPath = Paths.get(new URI(config.getINGEST_INDEX_FILE()));
+
+		try {
+			for (String line : Files.readAllLines(indexPath, StandardCharsets.UTF_8)) {
+				Fingerprint fp = Fingerprint.parse(line);
+				entries.put(fp.hash, fp);
+			}
+			log.info("Loaded " + entries.size() + " ingested file fingerprints from " + indexPath);
+		} catch (NoSuchFileException nsf) {
+			log.info("No ingested file index at " + indexPath + "...starting empty");
+		}
+	}
+
+	/**
+	 * Look the file up in the index. Files that begin with the full content of a
+	 * previously ingested file are reported but not treated as duplicates; that
+	 * check reads the input once, whatever the number of candidates, and is only
+	 * repeated when the file changes.
+	 *
+	 * @return the fingerprint of the identical file already ingested, or null
+	 */
+	public synchronized Fingerprint findDuplicate(final Path file) throws IOException {
+		long size = Files.size(file);
+		long head = crc(file, 0, size);
+		long tail = crc(file, Math.max(0, size - WINDOW), size);
+		String hash = null;
+		List<Fingerprint> overlaps = new ArrayList<>();
+
+		for (Fingerprint fp : new ArrayList<>(entries.values())) {
+			if (fp.size == size && fp.head == head && fp.tail == tail) {
+				if (hash == null) {
+					hash = sha256(file, size);
+				}
+				if (hash.equals(fp.hash)) {
+					entries.get(fp.hash);
+					save();
+					return fp;
+				}
+			} else if (fp.size < size && (fp.size < WINDOW || fp.head == head)) {
+				overlaps.add(fp);
+			}
+		}
+
+		// The veto re-checks a waiting file on every trigger fire, only report its overlaps once
+		String checked = file + ":" + size + ":" + Files.getLastModifiedTime(file).toMillis();
+		if (!overlaps.isEmpty() && !checked.equals(lastOverlapCheck)) {
+			lastOverlapCheck = checked;
+			overlaps.sort(Comparator.comparingLong(fp -> fp.size));
+			Map<Long, String> prefixHashes = sha256Prefixes(file, overlaps);
+			for (Fingerprint fp : overlaps) {
+				if (fp.hash.equals(prefixHashes.get(fp.size))) {
+					log.warn("Input " + file + " overlaps a previous file: its first " + fp.size + " bytes were ingested from "
+							+ fp.name + " at " + new Date(fp.ingested));
+				}
+			}
+		}
+		return null;
+	}
+
+	public synchronized void record(final Path file, final String name) throws IOException {
+		long size = Files.size(file);
+		Fingerprint fp = new Fingerprint(sha256(file, size), size, crc(file, 0, size),
+				crc(file, Math.max(0, size - WINDOW), size), System.currentTimeMillis(), name);
+		entries.put(fp.hash, fp);
+		save();
+		log.debug("Recorded ingested file " + fp);
+	}
+
+	private void save() throws IOException {
+		Files.createDirectories(indexPath.getParent());
+		Path tmp = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+		try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+			for (Fingerprint fp : entries.values()) {
+				writer.write(fp.format());
+				writer.newLine();
+			}
+		}
+		Files.move(tmp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static long crc(final Path file, final long from, final long size) throws IOException {
+		CRC32 crc = new CRC32();
+		ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(WINDOW, size - from));
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, from + buffer.position()) < 0) {
+					break;
+				}
+			}
+		}
+		buffer.flip();
+		crc.update(buffer);
+		return crc.getValue();
+	}
+
+	private static String sha256(final Path file, final long length) throws IOException {
+		MessageDigest digest = newDigest();
+
+		byte[] buffer = new byte[8192];
+		long remaining = length;
+		try (InputStream in = Files.newInputStream(file)) {
+			int n;
+			while (remaining > 0 && (n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) > 0) {
+				digest.update(buffer, 0, n);
+				remaining -= n;
+			}
+		}
+		return hex(digest);
+	}
+
+	/**
+	 * Hash the leading bytes of the file up to each candidate's size in a single
+	 * pass, taking a copy of the running digest as each length is reached.
+	 *
+	 * @param candidates sorted by ascending size
+	 */
+	private static Map<Long, String> sha256Prefixes(final Path file, final List<Fingerprint> candidates) throws IOException {
+		Map<Long, String> hashes = new HashMap<>();
+		MessageDigest digest = newDigest();
+
+		byte[] buffer = new byte[8192];
+		long position = 0;
+		try (InputStream in = Files.newInputStream(file)) {
+			for (Fingerprint fp : candidates) {
+				int n;
+				while (position < fp.size && (n = in.read(buffer, 0, (int) Math.min(buffer.length, fp.size - position))) > 0) {
+					digest.update(buffer, 0, n);
+					position += n;
+				}
+				if (position < fp.size) {
+					break;
+				}
+				if (!hashes.containsKey(fp.size)) {
+					try {
+						hashes.put(fp.size, hex((MessageDigest) digest.clone()));
+					} catch (CloneNotSupportedException e) {
+						throw new IllegalStateException(e);
+					}
+				}
+			}
+		}
+		return hashes;
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String hex(final MessageDigest digest) {
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest()) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+
+	public static class Fingerprint {
+		private final String hash;
+		private final long size;
+		private final long head;
+		private final long tail;
+		private final long ingested;
+		private final String name;
+
+		public Fingerprint(String hash, long size, long head, long tail, long ingested, String name) {
+			this.hash = hash;
+			this.size = size;
+			this.head = head;
+			this.tail = tail;
+			this.ingested = ingested;
+			this.name = name;
+		}
+
+		private static Fingerprint parse(final String line) {
+			String[] parts = line.split(",", 6);
+			return new Fingerprint(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2]),
+					Long.parseLong(parts[3]), Long.parseLong(parts[4]), parts[5]);
+		}
+
+		private String format() {
+			return hash + "," + size + "," + head + "," + tail + "," + ingested + "," + name;
+		}
+
+		public String getHash() {
+			return hash;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public long getIngested() {
+			return ingested;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String toString() {
+			return name + "::" + size + "::" + hash;
+		}
+	}
+}
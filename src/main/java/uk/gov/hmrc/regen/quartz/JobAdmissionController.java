@@ -0,0 +1,191 @@
+package uk.gov.hmrc.regen.quartz;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.quartz.JobDataMap;
+import org.quartz.JobDetail;
+import org.quartz.JobKey;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import uk.gov.hmrc.regen.common.ApplicationConfiguration;
+
+/**
+ * Decides whether a Quartz job may start, based on what is already running
+ * rather than simply whether anything is running. Each job declares in its
+ * job data map (see {@link #declareCost(Map, int, int, int)}) the executor
+ * threads, database connections and in-flight chunks or prefetched pages it
+ * holds while running, and every scheduled job must be registered through
+ * {@link #register(JobDetail)} at startup. A job is admitted while the total
+ * stays within the configured budgets, so ingest and export can overlap.
+ * <p>
+ * Only one instance of a job type runs at a time: a fire for a type that is
+ * already running is coalesced into the running one and dropped. A job refused
+ * for lack of capacity is queued in arrival order. Only the head of the queue
+ * may be admitted, so a frequently firing job cannot starve a larger one, and
+ * whenever capacity is released or a job is admitted the head is re-fired if
+ * it now fits, rather than left to wait for its next cron slot.
+ */
+@Component
+public class JobAdmissionController {
+
+	private static final Logger log = LoggerFactory.getLogger(JobAdmissionController.class);
+
+	@Autowired
+	ApplicationConfiguration config;
+
+	private static final String THREADS = "admissionThreads";
+
+	private static final String CONNECTIONS = "admissionConnections";
+
+	private static final String CHUNKS = "admissionChunks";
+
+	private final Map<String, Cost> costs = new HashMap<>();
+
+	private final Map<String, Cost> running = new HashMap<>();
+
+	private final Deque<JobKey> waiting = new ArrayDeque<>();
+
+	private int threadsInUse;
+
+	private int connectionsInUse;
+
+	private int chunksInUse;
+
+	/**
+	 * Add the resources a job holds while running to its job data map.
+	 */
+	public static void declareCost(final Map<String, Object> jobData, final int threads, final int connections,
+			final int chunks) {
+		jobData.put(THREADS, threads);
+		jobData.put(CONNECTIONS, connections);
+		jobData.put(CHUNKS, chunks);
+	}
+
+	/**
+	 * Record the declared cost of a scheduled job, failing for a job without one.
+	 */
+	public synchronized void register(final JobDetail jobDetail) {
+		JobDataMap data = jobDetail.getJobDataMap();
+		String name = jobDetail.getKey().getName();
+
+		if (!data.containsKey(THREADS) || !data.containsKey(CONNECTIONS) || !data.containsKey(CHUNKS)) {
+			throw new IllegalStateException("Job " + name + " does not declare its admission cost");
+		}
+		Cost cost = new Cost(data.getInt(THREADS), data.getInt(CONNECTIONS), data.getInt(CHUNKS));
+		costs.put(name, cost);
+		log.info("Job " + name + " costs " + cost);
+	}
+
+	/**
+	 * @return true if the job has been admitted and its resources reserved,
+	 *         false if it is already running or has been queued to run once
+	 *         capacity is available
+	 */
+	public synchronized boolean admit(final JobKey key, final Scheduler scheduler) {
+		String name = key.getName();
+		Cost cost = costOf(name);
+
+		if (running.containsKey(name)) {
+			// Coalesced into the run in progress, queueing it would hold up every other job behind it
+			log.info("Skipping " + name + ", already running " + usage());
+			return false;
+		}
+
+		boolean fair = waiting.isEmpty() || waiting.peekFirst().equals(key);
+		if (fair && fits(cost)) {
+			waiting.remove(key);
+			running.put(name, cost);
+			threadsInUse += cost.threads;
+			connectionsInUse += cost.connections;
+			chunksInUse += cost.chunks;
+			log.info("Admitted " + name + " " + usage());
+			fireHead(scheduler);
+			return true;
+		}
+
+		if (!waiting.contains(key)) {
+			waiting.addLast(key);
+		}
+		log.info("Queued " + name + " behind " + waiting + " " + usage());
+		return false;
+	}
+
+	/**
+	 * Drop a queued job that no longer needs to run (e.g. no input file).
+	 */
+	public synchronized void withdraw(final JobKey key, final Scheduler scheduler) {
+		if (waiting.remove(key)) {
+			fireHead(scheduler);
+		}
+	}
+
+	/**
+	 * Return the resources held by a finished job and re-fire the head of the queue if it now fits.
+	 */
+	public synchronized void release(final JobKey key, final Scheduler scheduler) {
+		Cost cost = running.remove(key.getName());
+		if (cost != null) {
+			threadsInUse -= cost.threads;
+			connectionsInUse -= cost.connections;
+			chunksInUse -= cost.chunks;
+			log.info("Released " + key.getName() + " " + usage());
+		}
+		fireHead(scheduler);
+	}
+
+	private void fireHead(final Scheduler scheduler) {
+		JobKey head = waiting.peekFirst();
+		if (head != null && !running.containsKey(head.getName()) && fits(costOf(head.getName()))) {
+			try {
+				scheduler.triggerJob(head);
+			} catch (SchedulerException e) {
+				log.error("Unable to re-fire queued job " + head + ": " + e.getMessage());
+			}
+		}
+	}
+
+	private Cost costOf(final String name) {
+		Cost cost = costs.get(name);
+		if (cost == null) {
+			throw new IllegalStateException("Job " + name + " was not registered for admission");
+		}
+		return cost;
+	}
+
+	private boolean fits(final Cost cost) {
+		// A job costing more than the whole budget may still run on its own
+		return running.isEmpty() || threadsInUse + cost.threads <= config.getADMISSION_THREADS()
+				&& connectionsInUse + cost.connections <= config.getADMISSION_CONNECTIONS()
+				&& chunksInUse + cost.chunks <= config.getADMISSION_CHUNKS();
+	}
+
+	private String usage() {
+		return "[threads " + threadsInUse + "/" + config.getADMISSION_THREADS() + ", connections " + connectionsInUse
+				+ "/" + config.getADMISSION_CONNECTIONS() + ", chunks " + chunksInUse + "/"
+				+ config.getADMISSION_CHUNKS() + "]";
+	}
+
+	private static class Cost {
+		private final int threads;
+		private final int connections;
+		private final int chunks;
+
+		private Cost(int threads, int connections, int chunks) {
+			this.threads = threads;
+			this.connections = connections;
+			this.chunks = chunks;
+		}
+
+		public String toString() {
+			return "[threads " + threads + ", connections " + connections + ", chunks " + chunks + "]";
+		}
+	}
+}
@@ -15,6 +15,7 @@ import java.util.Map;
 
 import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
+import org.quartz.JobKey;
 import org.quartz.SchedulerException;
 import org.quartz.Trigger;
 import org.quartz.listeners.JobListenerSupport;
@@ -50,11 +51,38 @@ public class QuartzConfiguration {
 	@Autowired
 	private JobLocator jobLocator;
 
+	@Autowired
+	private JobAdmissionController admissionController;
+
+	@Autowired
+	private FileFingerprintIndex fingerprintIndex;
+
 	private static boolean isDirEmpty(final Path directory) throws IOException {
 	    try(DirectoryStream<Path> dirStream = Files.newDirectoryStream(directory)) {
 	        return !dirStream.iterator().hasNext();
 	    }
 	}
+
+	/**
+	 * Set aside an input file identical to one already ingested rather than loading it again.
+	 */
+	private boolean skipDuplicateInput() {
+		try {
+			Path input = Paths.get(new URI(config.getINPUT_FILE()));
+			FileFingerprintIndex.Fingerprint previous = fingerprintIndex.findDuplicate(input);
+
+			if (previous != null) {
+				SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMddHHmm");
+				String NO = config.getPROCESSED_FILE() + "_duplicate_" + sdf.format(new Date());
+				Files.move(input, Paths.get(new URI(NO)));
+				log.info("Input " + input + " already ingested as " + previous.getName() + "...moved to " + NO);
+				return true;
+			}
+		} catch (Exception e) {
+			log.error("Unable to check input against ingested files, processing anyway: " + e.getMessage());
+		}
+		return false;
+	}
 	
 	@Bean
 	public JobRegistryBeanPostProcessor jobRegistryBeanPostProcessor(JobRegistry jobRegistry) {
@@ -71,6 +99,8 @@ public class QuartzConfiguration {
 		map.put("jobName", "csvFileToDatabaseJob");
 		map.put("jobLauncher", jobLauncher);
 		map.put("jobLocator", jobLocator);
+		// step thread and its transaction, one chunk in flight
+		JobAdmissionController.declareCost(map, 1, 1, 1);
 		factory.setJobDataAsMap(map);
 		factory.setGroup("csv_group");
 		factory.setName("csv_job");
@@ -96,6 +126,9 @@ public class QuartzConfiguration {
 		map.put("jobName", "databaseToFileJob");
 		map.put("jobLauncher", jobLauncher);
 		map.put("jobLocator", jobLocator);
+		// step, prefetch and file writer threads; chunk and prefetch connections; the chunk plus the prefetched pages
+		JobAdmissionController.declareCost(map, 2 + config.getOUTPUT_WRITER_THREADS(), 2,
+				1 + config.getEXPORT_PREFETCH_DEPTH());
 		factory.setJobDataAsMap(map);
 		factory.setGroup("csv_group");
 		factory.setName("db_job");
@@ -113,12 +146,43 @@ public class QuartzConfiguration {
 		return stFactory;
 	}
 	
+	@Bean
+	public JobDetailFactoryBean archiveJobDetailFactoryBean() {
+		JobDetailFactoryBean factory = new JobDetailFactoryBean();
+		factory.setJobClass(QuartzJobLauncher.class);
+		Map<String, Object> map = new HashMap<>();
+		map.put("jobName", "archiveJob");
+		map.put("jobLauncher", jobLauncher);
+		map.put("jobLocator", jobLocator);
+		// tasklet thread and its transaction, one batch of deletes at a time
+		JobAdmissionController.declareCost(map, 1, 1, 1);
+		factory.setJobDataAsMap(map);
+		factory.setGroup("archive_group");
+		factory.setName("archive_job");
+		return factory;
+	}
+
+	@Bean
+	public CronTriggerFactoryBean archiveCronTriggerFactoryBean() {
+		CronTriggerFactoryBean stFactory = new CronTriggerFactoryBean();
+		stFactory.setJobDetail(archiveJobDetailFactoryBean().getObject());
+		stFactory.setStartDelay(3000);
+		stFactory.setName("archive_cron_trigger");
+		stFactory.setGroup("archive_group");
+		stFactory.setCronExpression(config.getARCHIVE_CRON());
+		return stFactory;
+	}
+
 	@Bean
 	public SchedulerFactoryBean schedulerFactoryBean() throws SchedulerException {
 		log.info("Creating the scheduler");
 		SchedulerFactoryBean scheduler = new SchedulerFactoryBean();
+		admissionController.register(csvJobDetailFactoryBean().getObject());
+		admissionController.register(dbJobDetailFactoryBean().getObject());
+		admissionController.register(archiveJobDetailFactoryBean().getObject());
 		scheduler.setTriggers(csvCronTriggerFactoryBean().getObject(),
-							  dbCronTriggerFactoryBean().getObject());
+							  dbCronTriggerFactoryBean().getObject(),
+							  archiveCronTriggerFactoryBean().getObject());
 
 		scheduler.setGlobalTriggerListeners(new TriggerListenerSupport() {
 
@@ -131,23 +195,36 @@ public class QuartzConfiguration {
 			public boolean vetoJobExecution(Trigger trigger, JobExecutionContext context) {
 
 				boolean veto = false;
+				JobKey key = context.getJobDetail().getKey();
 
-				if (context.getJobDetail().getKey().getName().equals("csv_job")) {
+				if (key.getName().equals("csv_job")) {
 					try {
-						veto = context.getScheduler().getCurrentlyExecutingJobs().size() > 0 ||
-								!isDirEmpty(config.getERROR_PATH());
+						veto = !isDirEmpty(config.getERROR_PATH());
 
 						if (veto) {
-							this.getLog().info("Veto due to process already executing or awaiting restart");
+							this.getLog().info("Veto due to process awaiting restart");
+						} else if (new File(new URI(config.getPROCESSED_FILE())).exists()) {
+							// Left behind by an ingest interrupted by shutdown, resumed before any new input is taken
+							this.getLog().info("Processed file present...resuming interrupted csv processing");
 						} else {
 							veto = !(new File(new URI(config.getINPUT_FILE())).exists());
 							this.getLog().info("File existence check...Veto trigger " + veto);
+
+							if (!veto) {
+								veto = skipDuplicateInput();
+							}
 						}
 					} catch (Exception e) {
 						this.getLog().info("File " + config.getINPUT_FILE() + " not located...sleeping");
 						veto = true;
 					}
 				}
+
+				if (veto) {
+					admissionController.withdraw(key, context.getScheduler());
+				} else {
+					veto = !admissionController.admit(key, context.getScheduler());
+				}
 				return veto;
 			}
 
@@ -161,6 +238,10 @@ public class QuartzConfiguration {
 					this.getLog().info("Performing job set-up for csv processing");
 
 					try {
+						if (Files.exists(Paths.get(new URI(config.getPROCESSED_FILE())))) {
+							this.getLog().info("Restarting on the file already in process");
+							return;
+						}
 						Path dest = Files.move(Paths.get(new URI(config.getINPUT_FILE())), Paths.get(new URI(config.getPROCESSED_FILE())));
 
 						if (dest == null) {
@@ -188,6 +269,7 @@ public class QuartzConfiguration {
 						if (dest == null) {
 							throw new Exception("Unable to move file:" + config.getPROCESSED_FILE() + " to " + NO);
 						}
+						fingerprintIndex.record(dest, dest.getFileName().toString());
 					} catch (Exception e) {
 						this.getLog().error(e.getMessage());
 					}
@@ -207,6 +289,10 @@ public class QuartzConfiguration {
 						this.getLog().error(e.getMessage());
 					}
 				}
+				else if (context.getJobDetail().getKey().getName().equals("db_job") && jobException == null && repairRequired) {
+					// Lines from the rolled back chunk are still in the output file, the restart truncates them away
+					this.getLog().info("Leaving output file in place for the database processing restart");
+				}
 				else if (context.getJobDetail().getKey().getName().equals("db_job") && jobException == null) {
 					this.getLog().info("Performing job wrap-up for database processing");
 
@@ -225,6 +311,9 @@ public class QuartzConfiguration {
 					}
 
 				}
+
+				// Only released once the files are tidied, so a re-fired queued job cannot race the wrap-up
+				admissionController.release(context.getJobDetail().getKey(), context.getScheduler());
 			}
 
 			@Override
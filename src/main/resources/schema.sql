@@ -1,7 +1,32 @@
 DROP TABLE FIELDS IF EXISTS;
 CREATE TABLE FIELDS  (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
     field1 VARCHAR(100),
     field2 VARCHAR(100),
     field3 VARCHAR(100),
-    processed BOOLEAN
+    processed BOOLEAN,
+    exported_at TIMESTAMP,
+    export_run BIGINT,
+    ingest_run BIGINT
 );
+CREATE INDEX fields_export_run ON FIELDS (export_run);
+DROP TABLE INGEST_ARRIVAL IF EXISTS;
+CREATE TABLE INGEST_ARRIVAL  (
+    ingest_run BIGINT PRIMARY KEY,
+    file_name VARCHAR(255),
+    arrived_at TIMESTAMP
+);
+DROP TABLE FRESHNESS IF EXISTS;
+CREATE TABLE FRESHNESS  (
+    ingest_run BIGINT,
+    export_run BIGINT,
+    records BIGINT,
+    arrived_at TIMESTAMP,
+    ingest_started_at TIMESTAMP,
+    ingest_committed_at TIMESTAMP,
+    export_started_at TIMESTAMP,
+    output_at TIMESTAMP,
+    PRIMARY KEY (ingest_run, export_run)
+);
+CREATE INDEX freshness_export_run ON FRESHNESS (export_run);
+CREATE INDEX freshness_output_at ON FRESHNESS (output_at);
@@ -0,0 +1,142 @@
+package uk.gov.hmrc.regen.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamWriter;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+public class ConcurrentCompositeItemWriterTest {
+
+	private static final List<String> ITEMS = Arrays.asList("a", "b", "c");
+
+	private ThreadPoolTaskExecutor executor;
+
+	@Before
+	public void setUp() {
+		executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(2);
+		executor.setThreadNamePrefix("test-writer-");
+		executor.initialize();
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdown();
+	}
+
+	private ConcurrentCompositeItemWriter<String> createWriter(final ItemWriter<String> pooled,
+			final ItemWriter<String> transactional) throws Exception {
+		ConcurrentCompositeItemWriter<String> writer = new ConcurrentCompositeItemWriter<>();
+		writer.setDelegates(Collections.<ItemWriter<? super String>> singletonList(pooled));
+		writer.setTransactionalDelegates(Collections.<ItemWriter<? super String>> singletonList(transactional));
+		writer.setTaskExecutor(executor);
+		writer.afterPropertiesSet();
+		return writer;
+	}
+
+	@Test
+	public void writesEveryDelegateTransactionalOnesOnTheCallingThread() throws Exception {
+		RecordingWriter pooled = new RecordingWriter();
+		RecordingWriter transactional = new RecordingWriter();
+
+		createWriter(pooled, transactional).write(ITEMS);
+
+		assertEquals(ITEMS, pooled.items);
+		assertEquals(ITEMS, transactional.items);
+		assertSame(Thread.currentThread(), transactional.thread);
+		assertNotEquals(Thread.currentThread(), pooled.thread);
+	}
+
+	@Test
+	public void failsTheChunkWhenAPooledDelegateFails() throws Exception {
+		IllegalStateException failure = new IllegalStateException("disk full");
+		RecordingWriter transactional = new RecordingWriter();
+
+		try {
+			createWriter(items -> {
+				throw failure;
+			}, transactional).write(ITEMS);
+			fail("The pooled failure should fail the write");
+		} catch (IllegalStateException e) {
+			assertSame(failure, e);
+		}
+		assertEquals(ITEMS, transactional.items);
+	}
+
+	@Test
+	public void waitsForPooledDelegatesBeforeReportingATransactionalFailure() throws Exception {
+		AtomicBoolean pooledFinished = new AtomicBoolean();
+		IllegalStateException failure = new IllegalStateException("constraint violation");
+
+		try {
+			createWriter(items -> {
+				Thread.sleep(200);
+				pooledFinished.set(true);
+			}, items -> {
+				throw failure;
+			}).write(ITEMS);
+			fail("The transactional failure should fail the write");
+		} catch (IllegalStateException e) {
+			assertSame(failure, e);
+		}
+		assertTrue("Write returned while a pooled delegate was still writing", pooledFinished.get());
+	}
+
+	@Test
+	public void passesStreamCallsToEveryDelegate() throws Exception {
+		RecordingWriter pooled = new RecordingWriter();
+		RecordingWriter transactional = new RecordingWriter();
+		ConcurrentCompositeItemWriter<String> writer = createWriter(pooled, transactional);
+		ExecutionContext context = new ExecutionContext();
+
+		writer.open(context);
+		writer.update(context);
+		writer.close();
+
+		assertEquals(Arrays.asList("open", "update", "close"), pooled.calls);
+		assertEquals(Arrays.asList("open", "update", "close"), transactional.calls);
+	}
+
+	private static class RecordingWriter implements ItemStreamWriter<String> {
+		private final List<String> items = new ArrayList<>();
+		private final List<String> calls = new ArrayList<>();
+		private volatile Thread thread;
+
+		@Override
+		public void write(List<? extends String> chunk) {
+			thread = Thread.currentThread();
+			items.addAll(chunk);
+		}
+
+		@Override
+		public void open(ExecutionContext executionContext) throws ItemStreamException {
+			calls.add("open");
+		}
+
+		@Override
+		public void update(ExecutionContext executionContext) throws ItemStreamException {
+			calls.add("update");
+		}
+
+		@Override
+		public void close() throws ItemStreamException {
+			calls.add("close");
+		}
+	}
+}
@@ -0,0 +1,195 @@
+package uk.gov.hmrc.regen.out;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+
+public class ExternalSortItemReaderTest {
+
+	private final ListReader delegate = new ListReader();
+
+	private ExternalSortItemReader<Item> createReader(final int runSize) throws Exception {
+		ExternalSortItemReader<Item> reader = new ExternalSortItemReader<>();
+		reader.setName("sorted");
+		reader.setDelegate(delegate);
+		reader.setComparator(Comparator.comparingInt((Item item) -> item.value));
+		reader.setCodec(new ItemCodec());
+		reader.setRunSize(runSize);
+		reader.setMaxFanIn(2);
+		reader.setKeyExtractor((Item item) -> item.id);
+		reader.setKeyBound(delegate::setMaxKey);
+		reader.afterPropertiesSet();
+		return reader;
+	}
+
+	private void addItems(final long fromId, final long toId) {
+		for (long id = fromId; id <= toId; id++) {
+			// distinct values in an order unrelated to the ids
+			delegate.items.add(new Item(id, (int) (id * 37 % 101)));
+		}
+	}
+
+	private static List<Item> readAll(final ExternalSortItemReader<Item> reader) throws Exception {
+		List<Item> items = new ArrayList<>();
+		Item item;
+		while ((item = reader.read()) != null) {
+			items.add(item);
+		}
+		return items;
+	}
+
+	private static void assertSorted(final List<Item> items) {
+		for (int i = 1; i < items.size(); i++) {
+			assertTrue("Out of order at " + i, items.get(i - 1).value < items.get(i).value);
+		}
+	}
+
+	@Test
+	public void sortsInMemoryWhenEverythingFitsOneRun() throws Exception {
+		addItems(1, 20);
+		ExternalSortItemReader<Item> reader = createReader(100);
+		reader.open(new ExecutionContext());
+
+		List<Item> items = readAll(reader);
+		reader.close();
+
+		assertEquals(20, items.size());
+		assertSorted(items);
+	}
+
+	@Test
+	public void mergesSpilledRunsThroughIntermediateMerges() throws Exception {
+		addItems(1, 50);
+		// 13 runs of at most 4 with a fan-in of 2 needs several intermediate merge passes
+		ExternalSortItemReader<Item> reader = createReader(4);
+		reader.open(new ExecutionContext());
+
+		List<Item> items = readAll(reader);
+		reader.close();
+
+		assertEquals(50, items.size());
+		assertSorted(items);
+	}
+
+	@Test
+	public void restartOnlyResortsTheRowsOfTheFirstDrain() throws Exception {
+		addItems(1, 20);
+		ExecutionContext context = new ExecutionContext();
+		ExternalSortItemReader<Item> reader = createReader(4);
+		reader.open(context);
+		List<Item> written = new ArrayList<>();
+		for (int i = 0; i < 6; i++) {
+			written.add(reader.read());
+		}
+		reader.update(context);
+		reader.close();
+
+		assertEquals(20L, context.getLong("sorted.maxKey"));
+
+		// The written items were marked processed, and new rows sorting first arrived meanwhile
+		delegate.items.removeAll(written);
+		for (long id = 21; id <= 25; id++) {
+			delegate.items.add(new Item(id, (int) -id));
+		}
+
+		reader = createReader(4);
+		reader.open(context);
+		List<Item> remaining = readAll(reader);
+		reader.close();
+
+		assertEquals(14, remaining.size());
+		assertSorted(remaining);
+		assertTrue(written.get(written.size() - 1).value < remaining.get(0).value);
+		for (Item item : remaining) {
+			assertFalse("Row added after the first drain was read on restart", item.id > 20);
+		}
+
+		// A fresh run is not bounded
+		reader = createReader(4);
+		reader.open(new ExecutionContext());
+		assertEquals(19, readAll(reader).size());
+		reader.close();
+	}
+
+	private static class Item {
+		private final long id;
+		private final int value;
+
+		private Item(long id, int value) {
+			this.id = id;
+			this.value = value;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Item && ((Item) other).id == id;
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(id);
+		}
+	}
+
+	private static class ItemCodec implements ExternalSortItemReader.RecordCodec<Item> {
+		@Override
+		public void write(DataOutputStream out, Item item) throws IOException {
+			out.writeLong(item.id);
+			out.writeInt(item.value);
+		}
+
+		@Override
+		public Item read(DataInputStream in) throws IOException {
+			return new Item(in.readLong(), in.readInt());
+		}
+	}
+
+	/**
+	 * Stands in for the keyset reader: returns its items in list order, up to the maximum key if one is set.
+	 */
+	private static class ListReader implements ItemStreamReader<Item> {
+		private final List<Item> items = new ArrayList<>();
+		private Long maxKey;
+		private int index;
+
+		private void setMaxKey(Long maxKey) {
+			this.maxKey = maxKey;
+		}
+
+		@Override
+		public Item read() {
+			while (index < items.size()) {
+				Item item = items.get(index++);
+				if (maxKey == null || item.id <= maxKey) {
+					return item;
+				}
+			}
+			return null;
+		}
+
+		@Override
+		public void open(ExecutionContext executionContext) throws ItemStreamException {
+			index = 0;
+		}
+
+		@Override
+		public void update(ExecutionContext executionContext) throws ItemStreamException {
+		}
+
+		@Override
+		public void close() throws ItemStreamException {
+		}
+	}
+}
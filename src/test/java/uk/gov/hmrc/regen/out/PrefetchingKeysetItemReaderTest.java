@@ -0,0 +1,138 @@
+package uk.gov.hmrc.regen.out;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+public class PrefetchingKeysetItemReaderTest {
+
+	private static final int ROWS = 10;
+
+	private EmbeddedDatabase dataSource;
+
+	private PrefetchingKeysetItemReader<String> reader;
+
+	@Before
+	public void setUp() throws Exception {
+		dataSource = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.HSQL).generateUniqueName(true).build();
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.execute("CREATE TABLE items (id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, name VARCHAR(20), excluded BOOLEAN)");
+		for (int i = 1; i <= ROWS; i++) {
+			jdbcTemplate.update("INSERT INTO items (name, excluded) VALUES (?, ?)", "item" + i, i == 7);
+		}
+
+		reader = createReader((rs, row) -> rs.getString("name"));
+	}
+
+	@After
+	public void tearDown() {
+		if (reader != null) {
+			reader.close();
+		}
+		dataSource.shutdown();
+	}
+
+	private PrefetchingKeysetItemReader<String> createReader(final RowMapper<String> rowMapper) throws Exception {
+		PrefetchingKeysetItemReader<String> keysetReader = new PrefetchingKeysetItemReader<>();
+		keysetReader.setName("items");
+		keysetReader.setDataSource(dataSource);
+		keysetReader.setSelectClause("SELECT id, name FROM items");
+		keysetReader.setWhereClause("excluded is not true");
+		keysetReader.setKeyColumn("id");
+		keysetReader.setPageSize(3);
+		keysetReader.setPrefetchDepth(2);
+		keysetReader.setRowMapper(rowMapper);
+		keysetReader.afterPropertiesSet();
+		return keysetReader;
+	}
+
+	private static List<String> readAll(final PrefetchingKeysetItemReader<String> keysetReader) throws Exception {
+		List<String> items = new ArrayList<>();
+		String item;
+		while ((item = keysetReader.read()) != null) {
+			items.add(item);
+		}
+		return items;
+	}
+
+	@Test
+	public void readsAllPagesInKeyOrderApplyingTheWhereClause() throws Exception {
+		reader.open(new ExecutionContext());
+
+		List<String> items = readAll(reader);
+
+		assertEquals(9, items.size());
+		assertEquals("item1", items.get(0));
+		assertEquals("item8", items.get(6));
+		assertEquals("item10", items.get(8));
+		assertNull(reader.read());
+	}
+
+	@Test
+	public void restartsFromTheLastKeySaved() throws Exception {
+		ExecutionContext context = new ExecutionContext();
+		reader.open(context);
+		for (int i = 0; i < 4; i++) {
+			reader.read();
+		}
+		reader.update(context);
+		// Read past the update as a rolled back chunk would have
+		reader.read();
+		reader.close();
+
+		assertEquals(4L, context.getLong("items.lastKey"));
+
+		reader = createReader((rs, row) -> rs.getString("name"));
+		reader.open(context);
+		List<String> items = readAll(reader);
+
+		assertEquals(5, items.size());
+		assertEquals("item5", items.get(0));
+		assertEquals("item10", items.get(4));
+	}
+
+	@Test
+	public void stopsAtTheMaximumKey() throws Exception {
+		reader.setMaxKey(5L);
+		reader.open(new ExecutionContext());
+
+		List<String> items = readAll(reader);
+
+		assertEquals(5, items.size());
+		assertEquals("item5", items.get(4));
+	}
+
+	@Test
+	public void rethrowsAPrefetchFailureAfterTheItemsFetchedBeforeIt() throws Exception {
+		reader = createReader((rs, row) -> {
+			if (rs.getLong("id") == 5) {
+				throw new IllegalStateException("bad row");
+			}
+			return rs.getString("name");
+		});
+		reader.open(new ExecutionContext());
+
+		for (int i = 1; i <= 3; i++) {
+			assertEquals("item" + i, reader.read());
+		}
+		try {
+			reader.read();
+			fail("The failed page should have been reported");
+		} catch (IllegalStateException e) {
+			assertEquals("bad row", e.getMessage());
+		}
+	}
+}